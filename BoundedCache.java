@@ -0,0 +1,90 @@
+package blackbee.swarm.parsinghelper;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache with a fixed capacity. Meant for keeping compiled forms of the strings parsers pass around
+ * as constants (paths, patterns etc.), so that they are compiled once per JVM instead of once per call.
+ * <p>
+ * Reads never lock, they only mark the entry as used. Once the capacity is exceeded, the put that exceeded it
+ * evicts with a clock: entries are visited in the order of the map, a used one gets a second chance and is
+ * unmarked, an unused one is evicted. Only one thread evicts at a time, the others skip it, so the cache may
+ * hold a few entries more than its capacity for a moment, and what is evicted is close to, not exactly,
+ * the least recently used.
+ *
+ * @param <K> the key, usually the source string
+ * @param <V> the compiled value
+ * @author dpozinen
+ */
+public final class BoundedCache<K, V> {
+
+	private final int capacity;
+	private final ConcurrentHashMap<K, Entry<V>> map;
+	private final Lock evicting = new ReentrantLock();
+	/**
+	 * The clock hand, only moved while {@link #evicting} is held
+	 */
+	private Iterator<Map.Entry<K, Entry<V>>> hand;
+
+	public BoundedCache(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity should be positive, was " + capacity);
+		this.capacity = capacity;
+		this.map = new ConcurrentHashMap<>(Math.min(capacity, 64));
+	}
+
+	/**
+	 * @return the value by the key or null if it is not cached
+	 */
+	public V get(K key) {
+		Entry<V> entry = map.get(key);
+		if (entry == null) return null;
+		if (!entry.used) entry.used = true;
+		return entry.value;
+	}
+
+	/**
+	 * Caches the value, evicting entries that were not used lately if the cache is full
+	 */
+	public void put(K key, V value) {
+		map.put(key, new Entry<>(value));
+		if (map.size() > capacity) evict();
+	}
+
+	private void evict() {
+		if (!evicting.tryLock()) return;
+		try {
+			while (map.size() > capacity) {
+				if (hand == null || !hand.hasNext()) hand = map.entrySet().iterator();
+				if (!hand.hasNext()) return;
+
+				Map.Entry<K, Entry<V>> e = hand.next();
+				Entry<V> entry = e.getValue();
+				if (entry.used) entry.used = false;
+				else map.remove(e.getKey(), entry);
+			}
+		} finally {
+			evicting.unlock();
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public void clear() {
+		map.clear();
+	}
+
+	private static final class Entry<V> {
+		private final V value;
+		private volatile boolean used;
+
+		private Entry(V value) {
+			this.value = value;
+		}
+	}
+}
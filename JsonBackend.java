@@ -0,0 +1,40 @@
+package blackbee.swarm.parsinghelper;
+
+/**
+ * The json handling behind {@link JsonUtils}. A backend works on plain trees of maps, lists and values,
+ * the same trees a {@link com.jayway.jsonpath.internal.JsonContext} is created over, so switching the backend
+ * does not change what the parsers get from {@link JsonUtils#parse(String)}.
+ * <p>
+ * Implementations should be stateless and thread-safe, the backend in use is selected with {@link JsonBackends}.
+ *
+ * @author dpozinen
+ */
+public interface JsonBackend {
+
+	/**
+	 * @return the tree, or null if the text is not json this backend can parse
+	 */
+	Object parse(String json);
+
+	/**
+	 * Same as {@link #parse(String)} for the part of the text between {@code from} and {@code to}
+	 */
+	Object parse(String json, int from, int to);
+
+	/**
+	 * A missing path is not an error: implementations return null for it and never throw
+	 * {@link com.jayway.jsonpath.PathNotFoundException}. Paths that are not definite return a list, empty if nothing matched.
+	 *
+	 * @return the value at the path, or null if there is none
+	 */
+	Object read(Object tree, String path);
+
+	/**
+	 * Sets the value at the path, if the parent of the value exists, otherwise leaves the tree as it is without throwing
+	 *
+	 * @return the tree, or the value if the path was the root
+	 */
+	Object set(Object tree, String path, Object value);
+
+	String serialize(Object tree);
+}
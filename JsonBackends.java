@@ -0,0 +1,76 @@
+package blackbee.swarm.parsinghelper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selects the {@link JsonBackend} used by {@link JsonUtils}. The default is {@link #JSON_PATH}, so nothing changes
+ * for a parser unless it opts into another backend. The backend can be registered per parser class,
+ * {@link blackbee.swarm.parsinghelper.base.Router} then uses it for everything parsed while the step runs:
+ * <pre>
+ * static {
+ *     JsonBackends.register(MyRouter.class, JsonBackends.TREE);
+ * }
+ * </pre>
+ * Code outside of a step can select one for the current thread with {@link #use(JsonBackend)}.
+ *
+ * @author dpozinen
+ */
+public final class JsonBackends {
+
+	/**
+	 * Strict parsing and JsonPath reads, as before the backends were introduced, the default
+	 */
+	public static final JsonBackend JSON_PATH = JsonPathBackend.INSTANCE;
+	/**
+	 * Tolerant single pass parsing and direct reads of definite paths. The readers of {@link JsonUtils} return
+	 * their empty or default value for a missing path with it, instead of throwing {@link com.jayway.jsonpath.PathNotFoundException}
+	 */
+	public static final JsonBackend TREE = TreeJsonBackend.INSTANCE;
+
+	private static final Map<Class<?>, JsonBackend> byParser = new ConcurrentHashMap<>();
+	private static final ThreadLocal<JsonBackend> current = new ThreadLocal<>();
+	private static volatile JsonBackend defaultBackend = JSON_PATH;
+
+	private JsonBackends() {
+		throw new AssertionError();
+	}
+
+	public static void register(Class<?> parser, JsonBackend backend) {
+		if (backend == null) byParser.remove(parser);
+		else byParser.put(parser, backend);
+	}
+
+	/**
+	 * @return the backend registered for the parser class, or the default one
+	 */
+	public static JsonBackend of(Class<?> parser) {
+		JsonBackend backend = byParser.get(parser);
+		return backend == null ? defaultBackend : backend;
+	}
+
+	/**
+	 * @return the backend selected for the current thread, or the default one
+	 */
+	public static JsonBackend current() {
+		JsonBackend backend = current.get();
+		return backend == null ? defaultBackend : backend;
+	}
+
+	/**
+	 * Selects the backend for the current thread, null resets it to the default
+	 *
+	 * @return the backend selected before, to be passed back here when done
+	 */
+	public static JsonBackend use(JsonBackend backend) {
+		JsonBackend previous = current.get();
+		if (backend == null) current.remove();
+		else current.set(backend);
+		return previous;
+	}
+
+	public static void setDefault(JsonBackend backend) {
+		if (backend == null) throw new IllegalArgumentException("Default backend should not be null");
+		defaultBackend = backend;
+	}
+}
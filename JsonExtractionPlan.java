@@ -0,0 +1,248 @@
+package blackbee.swarm.parsinghelper;
+
+import blackbee.common.crawling.data.OfferKey;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.internal.JsonContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of named paths, read from a context all at once. The definite paths ({@code $.a.b}, {@code $['a'][0]})
+ * are merged into a prefix trie when the plan is built, so reading all of them is a single walk over the tree,
+ * and the common prefixes are only walked once. Other paths, functions like {@code $.items.length()} included,
+ * are read one by one with JsonPath, as {@link JsonUtils} does. Objects and arrays read as strings are serialized to json.
+ * <p>
+ * Plans are immutable and are meant to be built once per parser class:
+ * <pre>
+ * private static final JsonExtractionPlan PRODUCT = JsonExtractionPlan.builder()
+ *         .string(OfferKey.Name, "$.product.name")
+ *         .string(OfferKey.Brand, "$.product.brand.name")
+ *         .decimal(OfferKey.Price, "$.product.price.value")
+ *         .build();
+ *
+ * offer.addAll(PRODUCT.extract(json).toMap());
+ * </pre>
+ * Unlike {@link JsonUtils#readString}, a missing path never throws, it results in an empty string or a null number.
+ *
+ * @author dpozinen
+ */
+public final class JsonExtractionPlan {
+
+	private static final int STRING = 0;
+	private static final int DECIMAL = 1;
+	private static final int INTEGER = 2;
+	private static final String[] TYPE_NAMES = {"string", "decimal", "integer"};
+
+	/**
+	 * String or OfferKey
+	 */
+	private final Object[] keys;
+	private final String[] paths;
+	private final int[] types;
+	private final Map<Object, Integer> slots;
+	private final Node root;
+	/**
+	 * Slots of the paths that are not definite
+	 */
+	private final int[] others;
+
+	private JsonExtractionPlan(Builder b) {
+		int size = b.keys.size();
+		keys = b.keys.toArray();
+		paths = b.paths.toArray(new String[size]);
+		types = new int[size];
+		slots = new HashMap<>();
+		root = new Node();
+
+		List<Integer> others = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			types[i] = b.types.get(i);
+			slots.put(keys[i], i);
+
+			Object[] segments = StreamingJsonExtractor.segments(paths[i]);
+			if (segments == null) others.add(i);
+			else root.add(segments, 0, i);
+		}
+		this.others = new int[others.size()];
+		for (int i = 0; i < this.others.length; i++) this.others[i] = others.get(i);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public Result extract(JsonContext c) {
+		return extract(JsonView.of(c));
+	}
+
+	public Result extract(JsonView view) {
+		Object[] values = new Object[keys.length];
+		if (view.node() != null) root.walk(view.node(), values);
+		for (int i : others) {
+			try {
+				values[i] = view.read(paths[i]);
+			} catch (PathNotFoundException e) {
+				values[i] = null;
+			}
+		}
+
+		for (int i = 0; i < values.length; i++) values[i] = convert(values[i], types[i]);
+		return new Result(values);
+	}
+
+	private static Object convert(Object value, int type) {
+		if (type == STRING) {
+			if (value == null) return "";
+			return value instanceof Map || value instanceof List ? JsonUtils.serialize(value) : String.valueOf(value);
+		}
+		if (type == INTEGER && value instanceof Integer) return value;
+
+		BigDecimal number = JsonUtils.toBigDecimal(value);
+		if (type == DECIMAL || number == null) return number;
+		return number.intValue();
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * A node of the trie, the children are keyed by names (Strings) and indices (Integers)
+	 */
+	private static final class Node {
+		private final Map<Object, Node> children = new LinkedHashMap<>();
+		private final List<Integer> slots = new ArrayList<>(1);
+
+		private void add(Object[] segments, int i, int slot) {
+			if (i == segments.length) {
+				slots.add(slot);
+				return;
+			}
+			Node child = children.get(segments[i]);
+			if (child == null) children.put(segments[i], child = new Node());
+			child.add(segments, i + 1, slot);
+		}
+
+		private void walk(Object json, Object[] values) {
+			for (int slot : slots) values[slot] = json;
+
+			for (Map.Entry<Object, Node> e : children.entrySet()) {
+				Object segment = e.getKey(), child = null;
+				if (segment instanceof String && json instanceof Map) {
+					child = ((Map<?, ?>) json).get(segment);
+				} else if (segment instanceof Integer && json instanceof List) {
+					List<?> list = (List<?>) json;
+					int index = (Integer) segment;
+					if (index < list.size()) child = list.get(index);
+				}
+				if (child != null) e.getValue().walk(child, values);
+			}
+		}
+	}
+
+	public static final class Builder {
+		private final List<Object> keys = new ArrayList<>();
+		private final List<String> paths = new ArrayList<>();
+		private final List<Integer> types = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		public Builder string(OfferKey key, String path) {
+			return add(key, path, STRING);
+		}
+
+		public Builder string(String key, String path) {
+			return add(key, path, STRING);
+		}
+
+		public Builder decimal(OfferKey key, String path) {
+			return add(key, path, DECIMAL);
+		}
+
+		public Builder decimal(String key, String path) {
+			return add(key, path, DECIMAL);
+		}
+
+		public Builder integer(OfferKey key, String path) {
+			return add(key, path, INTEGER);
+		}
+
+		public Builder integer(String key, String path) {
+			return add(key, path, INTEGER);
+		}
+
+		private Builder add(Object key, String path, int type) {
+			if (key == null || path == null) throw new IllegalArgumentException("Key and path should not be null");
+			if (keys.contains(key)) throw new IllegalArgumentException("Key " + key + " is already in the plan");
+			keys.add(key);
+			paths.add(path);
+			types.add(type);
+			return this;
+		}
+
+		public JsonExtractionPlan build() {
+			return new JsonExtractionPlan(this);
+		}
+	}
+
+	/**
+	 * The values read by a plan, by the keys they were declared with
+	 */
+	public final class Result {
+		private final Object[] values;
+
+		private Result(Object[] values) {
+			this.values = values;
+		}
+
+		/**
+		 * @return the value or an empty string if the path was not found
+		 */
+		public String string(Object key) {
+			return (String) value(key, STRING);
+		}
+
+		/**
+		 * @return the value or null if the path was not found or was not a number
+		 */
+		public BigDecimal decimal(Object key) {
+			return (BigDecimal) value(key, DECIMAL);
+		}
+
+		/**
+		 * @return the value or null if the path was not found or was not a number
+		 */
+		public Integer integer(Object key) {
+			return (Integer) value(key, INTEGER);
+		}
+
+		private Object value(Object key, int type) {
+			Integer slot = slots.get(key);
+			if (slot == null) throw new IllegalArgumentException("Key " + key + " is not in the plan");
+			if (types[slot] != type) throw new IllegalArgumentException("Key " + key + " was not declared as " + TYPE_NAMES[type]);
+			return values[slot];
+		}
+
+		/**
+		 * @return all values that were found, in the declaration order, ready for {@link Offer#addAll(Map)}
+		 */
+		public Map<Object, Object> toMap() {
+			Map<Object, Object> map = new LinkedHashMap<>();
+			for (int i = 0; i < values.length; i++)
+				if (values[i] != null && !"".equals(values[i])) map.put(keys[i], values[i]);
+			return Collections.unmodifiableMap(map);
+		}
+
+		@Override
+		public String toString() {
+			return toMap().toString();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package blackbee.swarm.parsinghelper;
+
+import blackbee.swarm.util.JsonPathWrapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.internal.JsonContext;
+
+/**
+ * The backend {@link JsonUtils} always had: strict parsing with {@link JsonPathWrapper}, every path read with JsonPath
+ *
+ * @author dpozinen
+ */
+final class JsonPathBackend implements JsonBackend {
+
+	static final JsonPathBackend INSTANCE = new JsonPathBackend();
+
+	private final Configuration configuration;
+
+	private JsonPathBackend() {
+		JsonContext empty = JsonPathWrapper.parse("{}");
+		this.configuration = empty.configuration();
+	}
+
+	@Override
+	public Object parse(String json) {
+		try {
+			return JsonPathWrapper.parse(json).json();
+		} catch (IllegalArgumentException | InvalidJsonException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public Object parse(String json, int from, int to) {
+		return parse(json.substring(from, to));
+	}
+
+	@Override
+	public Object read(Object tree, String path) {
+		try {
+			return JsonUtils.compile(path).read(tree, configuration);
+		} catch (PathNotFoundException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public Object set(Object tree, String path, Object value) {
+		try {
+			return JsonUtils.compile(path).set(tree, value, configuration);
+		} catch (PathNotFoundException e) {
+			return tree;
+		}
+	}
+
+	@Override
+	public String serialize(Object tree) {
+		return configuration.jsonProvider().toJson(tree);
+	}
+
+	@Override
+	public String toString() {
+		return "JsonPath";
+	}
+}
@@ -1,6 +1,7 @@
 package blackbee.swarm.parsinghelper;
 
 import blackbee.swarm.util.JsonPathWrapper;
+import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.Criteria;
 import com.jayway.jsonpath.Filter;
 import com.jayway.jsonpath.InvalidJsonException;
@@ -11,21 +12,46 @@ import com.jayway.jsonpath.internal.JsonContext;
 import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class JsonUtils {
 
 	public static final JsonContext EMPTY_JSON = parse("{}");
+	private static final BoundedCache<String, JsonPath> PATHS = new BoundedCache<>(2048);
+	private static final BoundedCache<String, JsonPath> FIELD_PATHS = new BoundedCache<>(512);
 
 	private JsonUtils()
 	{
 		throw new AssertionError();
 	}
 
+	/**
+	 * Compiles the path once per JVM. Paths with filters are compiled on every call, since the filters are bound to the compiled path.
+	 */
+	public static JsonPath compile(String path, Predicate... filters) {
+		if (filters != null && filters.length > 0) return JsonPath.compile(path, filters);
+
+		JsonPath compiled = PATHS.get(path);
+		if (compiled == null) {
+			compiled = JsonPath.compile(path);
+			PATHS.put(path, compiled);
+		}
+		return compiled;
+	}
+
 	public static List<JsonContext> createJsonList(JsonContext c, String path, Predicate... filters) {
-		List<?> variantMapList = c.read(path, filters);
+		List<?> variantMapList = (List<?>) readNode(c, path, filters);
 		List<JsonContext> list = new ArrayList<>();
 		if (ParserUtil.isNotEmpty(variantMapList))
 			for ( Object map : variantMapList )
@@ -33,6 +59,40 @@ public class JsonUtils {
 		return list;
 	}
 
+	/**
+	 * Same as {@link #createJsonList}, but the elements are not wrapped into contexts. Every {@link JsonView} is created
+	 * only when the iterator gets to it, so breaking out of the loop early costs nothing for the rest.
+	 */
+	public static Iterable<JsonView> jsonViews(JsonContext c, String path, Predicate... filters) {
+		final List<?> nodes = (List<?>) readNode(c, path, filters);
+		final Configuration configuration = c.configuration();
+		return new Iterable<JsonView>()
+		{
+			@Override public Iterator<JsonView> iterator()
+			{
+				if (!ParserUtil.isNotEmpty(nodes)) return Collections.emptyIterator();
+				final Iterator<?> it = nodes.iterator();
+				return new Iterator<JsonView>()
+				{
+					@Override public boolean hasNext()
+					{
+						return it.hasNext();
+					}
+
+					@Override public JsonView next()
+					{
+						return new JsonView(it.next(), configuration);
+					}
+
+					@Override public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
 	public static Predicate fieldIs(String field, Object value) {
 		return Filter.filter(Criteria.where(field).is(value));
 	}
@@ -52,21 +112,35 @@ public class JsonUtils {
 		};
 	}
 
+	/**
+	 * The value is stripped of whitespace once, the field values are compared to it skipping their whitespace, without copying them
+	 */
 	public static Predicate fieldIsIgnoreCaseAndSpaces(final String field, final String value) {
+		final String stripped = value == null ? null : value.replaceAll("\\s+", "");
 		return new Predicate()
 		{
 			public boolean apply(PredicateContext c)
 			{
 				Map<?, ?> map = c.item(Map.class);
-				if (map != null) {
-					String s = String.valueOf(map.get(field)).replaceAll("\\s+", "");
-					return value.replaceAll("\\s+", "").equalsIgnoreCase(s);
+				if (map != null && stripped != null) {
+					String s = String.valueOf(map.get(field));
+					return equalsIgnoreCaseAndSpaces(s, stripped);
 				}
 				return false;
 			}
 		};
 	}
 
+	private static boolean equalsIgnoreCaseAndSpaces(String s, String stripped) {
+		int j = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\013') continue;
+			if (j == stripped.length() || !stripped.regionMatches(true, j++, s, i, 1)) return false;
+		}
+		return j == stripped.length();
+	}
+
 	public static Predicate fieldContains(String field, Object value)
 	{
 		return Filter.filter(Criteria.where(field).contains(value));
@@ -78,16 +152,14 @@ public class JsonUtils {
 			@Override public boolean apply(PredicateContext c)
 			{
 				Map<?, ?> map = c.item(Map.class);
-				if (map != null) {
-					if (map.get(field) instanceof List) {
-						for (Object o : (List<?>) map.get(field)) {
-							String s = String.valueOf(o);
-							if (value != null && s.toLowerCase().contains(value.toLowerCase()))
+				if (map != null && value != null) {
+					Object o = map.get(field);
+					if (o instanceof List) {
+						for (Object item : (List<?>) o)
+							if (containsIgnoreCase(String.valueOf(item), value))
 								return true;
-						}
 					} else {
-						String s = String.valueOf(map.get(field));
-						return value != null && s.toLowerCase().contains(value.toLowerCase());
+						return containsIgnoreCase(String.valueOf(o), value);
 					}
 				}
 				return false;
@@ -95,19 +167,103 @@ public class JsonUtils {
 		};
 	}
 
+	/**
+	 * Compares in place, instead of lower casing both strings on every call
+	 */
+	private static boolean containsIgnoreCase(String s, String needle) {
+		for (int i = 0; i + needle.length() <= s.length(); i++)
+			if (s.regionMatches(true, i, needle, 0, needle.length())) return true;
+		return false;
+	}
+
+	/**
+	 * A field without dots and brackets is looked up by walking the tree, stopping at the first object that has it,
+	 * instead of a JsonPath deep scan. To check several fields on the same json, use {@link JsonView#containsField},
+	 * which collects the keys once.
+	 */
 	public static boolean contextContainsField(JsonContext c, String field) {
-		List<?> read = c.read("$..[?]", List.class, Filter.filter(Criteria.where(field).exists(true)));
+		if (field != null && field.indexOf('.') < 0 && field.indexOf('[') < 0)
+			return containsKey(c.json(), field);
+
+		JsonPath path = FIELD_PATHS.get(field);
+		if (path == null) {
+			path = JsonPath.compile("$..[?]", Filter.filter(Criteria.where(field).exists(true)));
+			FIELD_PATHS.put(field, path);
+		}
+		List<?> read = c.read(path, List.class);
 		return ParserUtil.isNotEmpty(read);
 	}
 
+	/**
+	 * @return true if some object in the tree has the key, false for values other than maps and lists
+	 */
+	static boolean containsKey(Object tree, String key) {
+		Deque<Object> nodes = new ArrayDeque<>();
+		if (tree instanceof Map || tree instanceof List) nodes.push(tree);
+		while (!nodes.isEmpty()) {
+			Object node = nodes.pop();
+			Collection<?> children;
+			if (node instanceof Map) {
+				if (((Map<?, ?>) node).containsKey(key)) return true;
+				children = ((Map<?, ?>) node).values();
+			} else children = (List<?>) node;
+
+			for (Object child : children)
+				if (child instanceof Map || child instanceof List) nodes.push(child);
+		}
+		return false;
+	}
+
+	/**
+	 * @return the keys of all objects in the tree, empty for values other than maps and lists
+	 */
+	static Set<String> keys(Object tree) {
+		Set<String> keys = new HashSet<>();
+		Deque<Object> nodes = new ArrayDeque<>();
+		if (tree instanceof Map || tree instanceof List) nodes.push(tree);
+		while (!nodes.isEmpty()) {
+			Object node = nodes.pop();
+			Collection<?> children;
+			if (node instanceof Map) {
+				for (Object key : ((Map<?, ?>) node).keySet()) keys.add(String.valueOf(key));
+				children = ((Map<?, ?>) node).values();
+			} else children = (List<?>) node;
+
+			for (Object child : children)
+				if (child instanceof Map || child instanceof List) nodes.push(child);
+		}
+		return keys;
+	}
+
+	/**
+	 * Checks the root of the context, without serializing it
+	 */
 	public static boolean contextIsEmpty(JsonContext c)
 	{
-		return c != null && (c.equals(EMPTY_JSON) || c.jsonString().equals("{}"));
+		return c != null && (c.equals(EMPTY_JSON) || (rootIsObject(c) && rootSize(c) == 0));
+	}
+
+	public static boolean rootIsObject(JsonContext c) {
+		return c.json() instanceof Map;
+	}
+
+	public static boolean rootIsArray(JsonContext c) {
+		return c.json() instanceof List;
+	}
+
+	/**
+	 * @return the number of members of the root object or elements of the root array, -1 if the root is neither
+	 */
+	public static int rootSize(JsonContext c) {
+		Object root = c.json();
+		if (root instanceof Map) return ((Map<?, ?>) root).size();
+		if (root instanceof List) return ((List<?>) root).size();
+		return -1;
 	}
 
 	public static String readString(JsonContext c, String path)
 	{
-		return StringUtils.defaultString(c.read(path, String.class));
+		return StringUtils.defaultString(readNode(c, path, String.class));
 	}
 
 	/**
@@ -116,7 +272,7 @@ public class JsonUtils {
 	 */
 	public static String readFirstString(JsonContext c, String path)
 	{
-		return ParserUtil.firstOrEmpty(c.read(path, List.class));
+		return ParserUtil.firstOrEmpty(readNode(c, path, List.class));
 	}
 
 	/**
@@ -125,21 +281,144 @@ public class JsonUtils {
 	 */
 	public static String readFirstString(JsonContext c, String path, Predicate... filters)
 	{
-		return ParserUtil.firstOrEmpty(c.read(path, List.class, filters));
+		Configuration configuration = c.configuration();
+		return ParserUtil.firstOrEmpty(configuration.mappingProvider().map(readNode(c, path, filters), List.class, configuration));
+	}
+
+	/**
+	 * Reads the node with the context, as always, unless the {@link JsonBackends#current() current backend} was opted into.
+	 * That one returns null for a missing path instead of throwing. Paths with filters are always read with JsonPath,
+	 * the only one that supports them.
+	 */
+	static Object readNode(JsonContext c, String path, Predicate... filters) {
+		JsonBackend backend = JsonBackends.current();
+		if (backend == JsonBackends.JSON_PATH || filters != null && filters.length > 0) return c.read(compile(path, filters));
+		return backend.read(c.json(), path);
+	}
+
+	/**
+	 * Same as {@link #readNode(JsonContext, String, Predicate...)}, mapped to the type the way {@link JsonContext#read(String, Class, Predicate...)} does
+	 */
+	private static <T> T readNode(JsonContext c, String path, Class<T> type) {
+		if (JsonBackends.current() == JsonBackends.JSON_PATH) return c.read(compile(path), type);
+		Configuration configuration = c.configuration();
+		return configuration.mappingProvider().map(readNode(c, path), type, configuration);
 	}
 
+	/**
+	 * Number nodes are converted directly, only strings go through {@link PricingHelper#extractNumber}
+	 */
 	public static BigDecimal readBigDecimal(JsonContext c, String path)
 	{
-		return PricingHelper.extractNumber(readString(c, path));
+		return toBigDecimal(readNode(c, path));
 	}
 
 	public static BigDecimal readBigDecimalOrZero(JsonContext c, String path)
 	{
-		BigDecimal number = PricingHelper.extractNumber(readString(c, path));
+		BigDecimal number = readBigDecimal(c, path);
 		return number == null ? BigDecimal.ZERO : number;
 	}
 
+	/**
+	 * Reads a price as a number of cents, without creating a BigDecimal for integer nodes
+	 *
+	 * @return the value multiplied by 100, or the default if it is null or not a number
+	 */
+	public static long readMinorUnits(JsonContext c, String path, long defaultValue)
+	{
+		return toMinorUnits(readNode(c, path), defaultValue);
+	}
+
+	/**
+	 * Reads ratings, stock and the like. Unlike {@link #readBigDecimal}, number nodes are not rounded.
+	 *
+	 * @return the value, or the default if it is null or not a number
+	 */
+	public static double readDouble(JsonContext c, String path, double defaultValue)
+	{
+		return toDouble(readNode(c, path), defaultValue);
+	}
+
+	/**
+	 * @return the value of a number node with the scale {@link PricingHelper#extractNumber} uses,
+	 * or the number extracted from the text of any other node
+	 */
+	static BigDecimal toBigDecimal(Object value) {
+		BigDecimal number;
+		if (value == null) return null;
+		else if (value instanceof BigDecimal) number = (BigDecimal) value;
+		else if (value instanceof Integer || value instanceof Long) number = BigDecimal.valueOf(((Number) value).longValue());
+		else if (value instanceof BigInteger) number = new BigDecimal((BigInteger) value);
+		else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) return null;
+			number = BigDecimal.valueOf(d);
+		} else return PricingHelper.extractNumber(String.valueOf(value));
+		return number.setScale(2, RoundingMode.HALF_UP);
+	}
+
+	static long toMinorUnits(Object value, long defaultValue) {
+		if (value instanceof Integer || value instanceof Long) return ((Number) value).longValue() * 100;
+		BigDecimal number = toBigDecimal(value);
+		return number == null ? defaultValue : number.movePointRight(2).longValue();
+	}
+
+	static double toDouble(Object value, double defaultValue) {
+		if (value instanceof Number) return ((Number) value).doubleValue();
+		BigDecimal number = toBigDecimal(value);
+		return number == null ? defaultValue : number.doubleValue();
+	}
+
+	/**
+	 * Parses the string with the {@link JsonBackends#current() current backend}. By default that is the strict parsing
+	 * it always was. With {@link JsonBackends#TREE} it is a single pass with {@link TolerantJsonParser}, which also
+	 * handles script noise, single quotes, unquoted keys and trailing semicolons, the strict parsers are tried only if it fails.
+	 *
+	 * @return the parsed json or {@link #EMPTY_JSON} if nothing could be parsed
+	 */
 	public static JsonContext parse(String s) {
+		return parse(s, JsonBackends.current());
+	}
+
+	public static JsonContext parse(String s, JsonBackend backend) {
+		if (backend == JsonBackends.JSON_PATH) return parseStrictly(s);
+		Object json = s == null ? null : backend.parse(s);
+		return json != null ? (JsonContext) JsonPathWrapper.parse(json) : parseStrictly(s);
+	}
+
+	/**
+	 * Same as {@link #parse(String)} for the part of the string between {@code from} and {@code to}
+	 */
+	public static JsonContext parse(String s, int from, int to) {
+		JsonBackend backend = JsonBackends.current();
+		if (backend == JsonBackends.JSON_PATH) return parseStrictly(s.substring(from, to));
+		Object json = backend.parse(s, from, to);
+		return json != null ? (JsonContext) JsonPathWrapper.parse(json) : parseStrictly(s.substring(from, to));
+	}
+
+	/**
+	 * Reads the tree with the current backend
+	 *
+	 * @return the value at the path, or null if there is none
+	 */
+	public static Object read(Object tree, String path) {
+		return JsonBackends.current().read(tree, path);
+	}
+
+	/**
+	 * Sets the value at the path of the tree with the current backend
+	 *
+	 * @return the tree, or the value if the path was the root
+	 */
+	public static Object set(Object tree, String path, Object value) {
+		return JsonBackends.current().set(tree, path, value);
+	}
+
+	public static String serialize(Object tree) {
+		return JsonBackends.current().serialize(tree);
+	}
+
+	private static JsonContext parseStrictly(String s) {
 		try {
 			return JsonPathWrapper.parse(s);
 		} catch (IllegalArgumentException | InvalidJsonException e) {
@@ -147,17 +426,34 @@ public class JsonUtils {
 				JsonContext json = ParserUtil.extractJson(s);
 				if (contextIsEmpty(json))
 					try {
-						return parse(JsonPath.parse(s).jsonString());
+						return parseStrictly(JsonPath.parse(s).jsonString());
 					} catch (IllegalArgumentException | InvalidJsonException e1) {
 						return EMPTY_JSON;
 					}
-				return parse(json.jsonString());
+				return parseStrictly(json.jsonString());
 			} catch (UnsupportedOperationException ex) {
 				return EMPTY_JSON;
 			}
 		}
 	}
 
+	/**
+	 * Parses only the object or array at the provided path, skipping everything else without building it.
+	 * Falls back to parsing the whole string if the path is not a definite one.
+	 *
+	 * @param path a definite path, like {@code $.props.pageProps.product}
+	 * @return the node at the path, or {@link #EMPTY_JSON} if there was nothing to parse
+	 * @see StreamingJsonExtractor
+	 */
+	public static JsonContext parse(String s, String path) {
+		String node = StreamingJsonExtractor.extract(s, path);
+		if (node != null) return parse(node);
+
+		JsonContext json = parse(s);
+		if (contextIsEmpty(json)) return json;
+		return parse(readNode(json, path));
+	}
+
 	/**
 	 * Returns the first element from the results. This is used with relative Json Paths for which {@link JsonContext#read} returns a list.
 	 * This methods gets that first element saving the generic information provided by the {@link TypeRef<T>}
@@ -168,7 +464,8 @@ public class JsonUtils {
 	 */
 	public static <T> T firstOrNull(JsonContext context, String path, TypeRef<List<T>> typeRef)
 	{
-		List<T> read = context.read(path, typeRef);
+		Configuration configuration = context.configuration();
+		List<T> read = configuration.mappingProvider().map(readNode(context, path), typeRef, configuration);
 		return ParserUtil.isNotEmpty(read) ? read.get(0) : null;
 	}
 
@@ -0,0 +1,142 @@
+package blackbee.swarm.parsinghelper;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.Predicate;
+import com.jayway.jsonpath.internal.JsonContext;
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * A read only view over a node of an already parsed json tree. Unlike a {@link JsonContext} created with
+ * {@link JsonUtils#parse(Object)}, nothing is wrapped or parsed again, the view only holds the node and the configuration
+ * of the context it came from. Meant for variant loops:
+ * <pre>
+ * for (JsonView variant : JsonUtils.jsonViews(context, "$.variants[*]"))
+ *     Offer.copyOf(results, variant.readString("$.sku"), baseOffer).price(variant.readBigDecimal("$.price"));
+ * </pre>
+ *
+ * @author dpozinen
+ */
+public final class JsonView {
+
+	private final Object node;
+	private final Configuration configuration;
+	/**
+	 * The keys of all objects under the node, collected on the first {@link #containsField} call
+	 */
+	private volatile Set<String> keys;
+
+	JsonView(Object node, Configuration configuration) {
+		this.node = node;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * @return a view over the root of the context
+	 */
+	public static JsonView of(JsonContext c) {
+		return new JsonView(c.json(), c.configuration());
+	}
+
+	/**
+	 * Reads with JsonPath, unless the {@link JsonBackends#current() current backend} was opted into,
+	 * paths with filters are always read with JsonPath
+	 *
+	 * @return the node at the path, with an opted in backend null if there is none
+	 * @see JsonContext#read(String, Predicate...)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T read(String path, Predicate... filters) {
+		JsonBackend backend = JsonBackends.current();
+		if (backend == JsonBackends.JSON_PATH || filters != null && filters.length > 0)
+			return JsonUtils.compile(path, filters).read(node, configuration);
+		return (T) backend.read(node, path);
+	}
+
+	/**
+	 * @see JsonContext#read(String, Class, Predicate...)
+	 */
+	public <T> T read(String path, Class<T> type, Predicate... filters) {
+		Object value = read(path, filters);
+		return configuration.mappingProvider().map(value, type, configuration);
+	}
+
+	/**
+	 * @see JsonUtils#readString(JsonContext, String)
+	 */
+	public String readString(String path) {
+		return StringUtils.defaultString(read(path, String.class));
+	}
+
+	/**
+	 * @see JsonUtils#readBigDecimal(JsonContext, String)
+	 */
+	public BigDecimal readBigDecimal(String path) {
+		return JsonUtils.toBigDecimal(read(path));
+	}
+
+	/**
+	 * @see JsonUtils#readBigDecimalOrZero(JsonContext, String)
+	 */
+	public BigDecimal readBigDecimalOrZero(String path) {
+		BigDecimal number = readBigDecimal(path);
+		return number == null ? BigDecimal.ZERO : number;
+	}
+
+	/**
+	 * @see JsonUtils#readMinorUnits(JsonContext, String, long)
+	 */
+	public long readMinorUnits(String path, long defaultValue) {
+		return JsonUtils.toMinorUnits(read(path), defaultValue);
+	}
+
+	/**
+	 * @see JsonUtils#readDouble(JsonContext, String, double)
+	 */
+	public double readDouble(String path, double defaultValue) {
+		return JsonUtils.toDouble(read(path), defaultValue);
+	}
+
+	/**
+	 * The first call collects the keys of all objects under the node, the following ones are a set lookup,
+	 * so the view should not be changed after it. Fields with dots or brackets are looked up as paths.
+	 *
+	 * @see JsonUtils#contextContainsField(JsonContext, String)
+	 */
+	public boolean containsField(String field) {
+		if (field == null || field.indexOf('.') >= 0 || field.indexOf('[') >= 0)
+			return JsonUtils.contextContainsField(context(), field);
+
+		Set<String> keys = this.keys;
+		if (keys == null) this.keys = keys = JsonUtils.keys(node);
+		return keys.contains(field);
+	}
+
+	/**
+	 * @return a view over the node at the path, nothing is copied
+	 */
+	public JsonView view(String path) {
+		return new JsonView(read(path), configuration);
+	}
+
+	/**
+	 * @return the node itself, a map, a list or a value
+	 */
+	public Object node() {
+		return node;
+	}
+
+	/**
+	 * Wraps the node into a context, for the methods that need one
+	 */
+	public JsonContext context() {
+		return JsonUtils.parse(node);
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(node);
+	}
+}
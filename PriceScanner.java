@@ -0,0 +1,146 @@
+package blackbee.swarm.parsinghelper;
+
+import java.math.BigDecimal;
+
+/**
+ * A hand-written scanner for the price formats found on almost every page: {@code 1.299,00 €}, {@code $1,299.00},
+ * {@code 1 299,-}, {@code CHF 1'299.90}, {@code 12,5}. It reads the text in place and returns the price in minor
+ * units (cents), so nothing is allocated.
+ * <p>
+ * Only texts that can't be read any other way are scanned: a single number with an explicit decimal part, a {@code ,-}
+ * or space/apostrophe grouping, surrounded by text without digits. Anything else ({@code 1.299}, {@code -5},
+ * {@code .99}, {@code 2 for 10}) is reported as {@link #NONE}, and {@link #number(String)} hands it to
+ * {@link PricingHelper#extractNumber}. The scanned formats are meant to be read the way extractNumber reads them,
+ * but that is not checked against it, so a text read differently is a bug of this class: add it to the formats
+ * reported as {@link #NONE}.
+ *
+ * @author dpozinen
+ */
+public final class PriceScanner {
+
+	/**
+	 * Returned when the text is not one of the supported formats
+	 */
+	public static final long NONE = Long.MIN_VALUE;
+
+	/**
+	 * More digits than this can overflow the minor units
+	 */
+	private static final int MAX_DIGITS = 16;
+	/**
+	 * Prices up to 99.99 are cached, filled on first use. BigDecimal is immutable, so the races are harmless
+	 */
+	private static final BigDecimal[] SMALL = new BigDecimal[10000];
+
+	private PriceScanner() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @return the price in minor units, or {@link #NONE} if the text is not one of the supported formats
+	 */
+	public static long scan(CharSequence s) {
+		if (s == null) return NONE;
+		int n = s.length(), i = 0;
+		while (i < n && !isDigit(s.charAt(i))) {
+			if (s.charAt(i) == '-') return NONE;
+			i++;
+		}
+		if (i == n) return NONE;
+		// .99 and ,50 have a decimal part without an integer one, extractNumber reads them
+		if (i > 0 && isSeparator(s.charAt(i - 1)) && !Character.isSpaceChar(s.charAt(i - 1))) return NONE;
+
+		// the number is read as digit groups split by single separators, and checked for thousands grouping on the way
+		long value = 0;
+		int digits = 0, groups = 0, length = 0;
+		char grouping = 0, separator = 0;
+		boolean grouped = true, groupedBeforeLast = true, dash = false;
+
+		while (true) {
+			length = 0;
+			while (i < n && isDigit(s.charAt(i))) {
+				if (++digits > MAX_DIGITS) return NONE;
+				value = value * 10 + (s.charAt(i++) - '0');
+				length++;
+			}
+			groupedBeforeLast = grouped;
+			grouped = grouped && (groups == 0 ? length <= 3 : length == 3 && separator == grouping);
+			groups++;
+
+			if (i + 1 >= n || !isSeparator(s.charAt(i))) break;
+			char next = s.charAt(i + 1);
+			if (next == '-' && (s.charAt(i) == ',' || s.charAt(i) == '.')) {
+				dash = true;
+				i += 2;
+				break;
+			}
+			if (!isDigit(next)) break;
+			separator = s.charAt(i++);
+			if (groups == 1) grouping = separator;
+		}
+
+		if (!hasNoDigits(s, i)) return NONE;
+		if (groups == 1) return value * 100;
+
+		if (dash || length == 3) {
+			// 1 299,- and 1'299: every separator groups thousands
+			if (!grouped) return NONE;
+			return dash || isUnambiguousGrouping(grouping) ? value * 100 : NONE;
+		}
+
+		// 1.299,00 and 12,5: the last separator is the decimal one, the others group thousands
+		if (length > 2 || (separator != ',' && separator != '.')) return NONE;
+		if (groups > 2 && (!groupedBeforeLast || grouping == separator)) return NONE;
+		return length == 2 ? value : value * 10;
+	}
+
+	/**
+	 * {@code 1.299} and {@code 1,299} mean different things in different countries, spaces and apostrophes don't
+	 */
+	private static boolean isUnambiguousGrouping(char c) {
+		return c != ',' && c != '.';
+	}
+
+	private static boolean hasNoDigits(CharSequence s, int from) {
+		for (int i = from; i < s.length(); i++)
+			if (isDigit(s.charAt(i))) return false;
+		return true;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '.' || c == ',' || c == ' ' || c == '\u00A0' || c == '\u202F' || c == '\'';
+	}
+
+	/**
+	 * @return the price, with the scale and rounding of {@link PricingHelper#extractNumber}, or null if there is none
+	 */
+	public static BigDecimal number(String s) {
+		long minorUnits = scan(s);
+		return minorUnits == NONE ? PricingHelper.extractNumber(s) : valueOf(minorUnits);
+	}
+
+	/**
+	 * @return the price in minor units, or {@link #NONE} if there is none
+	 */
+	public static long minorUnits(String s) {
+		long minorUnits = scan(s);
+		if (minorUnits != NONE) return minorUnits;
+
+		BigDecimal number = PricingHelper.extractNumber(s);
+		return number == null ? NONE : number.movePointRight(2).longValue();
+	}
+
+	/**
+	 * @return the minor units as a BigDecimal with the scale of 2, cached for small prices
+	 */
+	public static BigDecimal valueOf(long minorUnits) {
+		if (minorUnits < 0 || minorUnits >= SMALL.length) return BigDecimal.valueOf(minorUnits, 2);
+		BigDecimal number = SMALL[(int) minorUnits];
+		if (number == null) SMALL[(int) minorUnits] = number = BigDecimal.valueOf(minorUnits, 2);
+		return number;
+	}
+}
@@ -0,0 +1,273 @@
+package blackbee.swarm.parsinghelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the node at a JsonPath in raw json text without parsing the rest of it. Subtrees that are not on the path
+ * are skipped at the token level, only the requested node is handed to the parser afterwards.
+ * Meant for multi-megabyte inline state, where one small subtree is needed:
+ * <pre>
+ * JsonUtils.parse(script, "$.props.pageProps.product");
+ * </pre>
+ * Only definite paths are supported - {@code $.a.b}, {@code $['a'][0]} and combinations. Anything else
+ * (deep scans, wildcards, filters, slices, functions like {@code length()}) is reported as not found, and the caller should fall back to a full parse.
+ *
+ * @author dpozinen
+ */
+public final class StreamingJsonExtractor {
+
+	private static final BoundedCache<String, Object[]> PATHS = new BoundedCache<>(1024);
+	private static final Object[] UNSUPPORTED = new Object[0];
+
+	private final String text;
+	private final int end;
+	private int pos;
+
+	private StreamingJsonExtractor(String text, int from, int to) {
+		this.text = text;
+		this.pos = from;
+		this.end = to;
+	}
+
+	/**
+	 * @return the raw text of the object or array at the path, or null if it was not found or the path is not supported
+	 */
+	public static String extract(String text, String path) {
+		return extract(text, 0, text == null ? 0 : text.length(), path);
+	}
+
+	/**
+	 * Same as {@link #extract(String, String)} for the part of the text between {@code from} and {@code to}.
+	 * Everything before the first {@code '{'} or {@code '['} is ignored, so script noise like {@code var state = } is fine.
+	 */
+	public static String extract(String text, int from, int to, String path) {
+		if (text == null || path == null) return null;
+		Object[] segments = compile(path);
+		if (segments == UNSUPPORTED) return null;
+
+		StreamingJsonExtractor extractor = new StreamingJsonExtractor(text, from, to);
+		if (!extractor.skipToJson()) return null;
+
+		for (Object segment : segments) {
+			boolean found = segment instanceof String ? extractor.member((String) segment) : extractor.element((Integer) segment);
+			if (!found) return null;
+		}
+
+		int start = extractor.pos;
+		char c = start < to ? text.charAt(start) : 0;
+		if (c != '{' && c != '[') return null;
+		if (!extractor.skipValue()) return null;
+		return text.substring(start, extractor.pos);
+	}
+
+	/**
+	 * Moves to the value of the member with the given name of the object at the current position.
+	 * The whole object is scanned, since the last duplicate key wins when the json is parsed.
+	 */
+	private boolean member(String name) {
+		if (!skip('{')) return false;
+		int found = -1;
+
+		skipSpaces();
+		if (peek() == '}') return false;
+		while (true) {
+			skipSpaces();
+			String key = key();
+			if (key == null || !skip(':')) return false;
+
+			skipSpaces();
+			if (key.equals(name)) found = pos;
+			if (!skipValue()) return false;
+
+			skipSpaces();
+			char c = next();
+			if (c == '}') break;
+			if (c != ',') return false;
+		}
+
+		if (found < 0) return false;
+		pos = found;
+		return true;
+	}
+
+	/**
+	 * Moves to the value at the given index of the array at the current position
+	 */
+	private boolean element(int index) {
+		if (!skip('[')) return false;
+
+		skipSpaces();
+		if (peek() == ']') return false;
+		for (int i = 0; i < index; i++) {
+			if (!skipValue()) return false;
+			skipSpaces();
+			if (next() != ',') return false;
+			skipSpaces();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the key at the current position, only double quoted keys are supported
+	 */
+	private String key() {
+		if (peek() != '"') return null;
+		int start = ++pos;
+		boolean escaped = false;
+		while (pos < end) {
+			char c = text.charAt(pos++);
+			if (c == '\\') {
+				escaped = true;
+				pos++;
+			} else if (c == '"') {
+				String key = text.substring(start, pos - 1);
+				return escaped ? unescape(key) : key;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Skips the value at the current position without building anything
+	 */
+	private boolean skipValue() {
+		skipSpaces();
+		if (pos >= end) return false;
+		char c = text.charAt(pos);
+
+		if (c == '"') return skipString();
+		if (c != '{' && c != '[') {
+			while (pos < end && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) pos++;
+			return true;
+		}
+
+		int depth = 0;
+		while (pos < end) {
+			c = text.charAt(pos);
+			if (c == '"') {
+				if (!skipString()) return false;
+				continue;
+			}
+			pos++;
+			if (c == '{' || c == '[') depth++;
+			else if ((c == '}' || c == ']') && --depth == 0) return true;
+		}
+		return false;
+	}
+
+	private boolean skipString() {
+		pos++;
+		while (pos < end) {
+			char c = text.charAt(pos++);
+			if (c == '\\') pos++;
+			else if (c == '"') return true;
+		}
+		return false;
+	}
+
+	private boolean skipToJson() {
+		while (pos < end && text.charAt(pos) != '{' && text.charAt(pos) != '[') pos++;
+		return pos < end;
+	}
+
+	private boolean skip(char expected) {
+		skipSpaces();
+		if (pos >= end || text.charAt(pos) != expected) return false;
+		pos++;
+		return true;
+	}
+
+	private void skipSpaces() {
+		while (pos < end && Character.isWhitespace(text.charAt(pos))) pos++;
+	}
+
+	private char peek() {
+		return pos < end ? text.charAt(pos) : 0;
+	}
+
+	private char next() {
+		return pos < end ? text.charAt(pos++) : 0;
+	}
+
+	private static String unescape(String key) {
+		StringBuilder sb = new StringBuilder(key.length());
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c != '\\' || i + 1 == key.length()) {
+				sb.append(c);
+				continue;
+			}
+			char e = key.charAt(++i);
+			switch (e) {
+				case 'n': sb.append('\n'); break;
+				case 't': sb.append('\t'); break;
+				case 'r': sb.append('\r'); break;
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'u':
+					if (i + 4 < key.length()) {
+						sb.append((char) Integer.parseInt(key.substring(i + 1, i + 5), 16));
+						i += 4;
+					}
+					break;
+				default: sb.append(e);
+			}
+		}
+		return sb.toString();
+	}
+
+	// #path
+
+	/**
+	 * @return the segments of a definite path, names as Strings and indices as Integers, or null if the path is not a definite one
+	 */
+	static Object[] segments(String path) {
+		Object[] segments = compile(path);
+		return segments == UNSUPPORTED ? null : segments;
+	}
+
+	private static Object[] compile(String path) {
+		Object[] segments = PATHS.get(path);
+		if (segments == null) {
+			segments = parsePath(path.trim());
+			PATHS.put(path, segments);
+		}
+		return segments;
+	}
+
+	/**
+	 * @return names as Strings and indices as Integers, or {@link #UNSUPPORTED}
+	 */
+	private static Object[] parsePath(String path) {
+		if (!path.startsWith("$")) return UNSUPPORTED;
+		List<Object> segments = new ArrayList<>();
+		int i = 1;
+
+		while (i < path.length()) {
+			char c = path.charAt(i);
+			if (c == '.') {
+				int start = ++i;
+				while (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[') i++;
+				String name = path.substring(start, i);
+				if (name.isEmpty() || name.equals("*") || name.indexOf('(') >= 0) return UNSUPPORTED;
+				segments.add(name);
+			} else if (c == '[') {
+				int close = path.indexOf(']', i);
+				if (close < 0) return UNSUPPORTED;
+				String inner = path.substring(i + 1, close).trim();
+				i = close + 1;
+
+				if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')
+					&& inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+					String name = inner.substring(1, inner.length() - 1);
+					if (name.indexOf(inner.charAt(0)) >= 0) return UNSUPPORTED;
+					segments.add(name);
+				} else if (!inner.isEmpty() && inner.matches("\\d{1,9}")) {
+					segments.add(Integer.valueOf(inner));
+				} else return UNSUPPORTED;
+			} else return UNSUPPORTED;
+		}
+		return segments.toArray();
+	}
+}
@@ -0,0 +1,279 @@
+package blackbee.swarm.parsinghelper;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A single pass json parser, that accepts what sites put into their scripts, not only strict json:
+ * <ul>
+ * <li>noise before the json, like {@code var state = }, is skipped up to the first {@code '{'} or {@code '['}</li>
+ * <li>anything after the json, like the trailing {@code ;}, is ignored</li>
+ * <li>single quoted strings, unquoted keys, trailing commas, comments and {@code undefined}</li>
+ * </ul>
+ * Produces the same tree json-smart does ({@link JSONObject}, {@link JSONArray}, Integer/Long/BigInteger, Double/BigDecimal),
+ * so the result can be wrapped into a context directly. Never throws, invalid input results in null, and so does json
+ * nested deeper than {@link #MAX_DEPTH}, which would otherwise overflow the stack.
+ *
+ * @author dpozinen
+ */
+public final class TolerantJsonParser {
+
+	/**
+	 * Returned by the value methods on invalid input, instead of throwing
+	 */
+	private static final Object FAIL = new Object();
+	/**
+	 * The deepest nesting of objects and arrays that is parsed, real page state stays far below it
+	 */
+	private static final int MAX_DEPTH = 512;
+
+	private final String s;
+	private final int end;
+	private int pos;
+	private int depth;
+
+	private TolerantJsonParser(String s, int from, int to) {
+		this.s = s;
+		this.pos = from;
+		this.end = to;
+	}
+
+	/**
+	 * @return the parsed object or array, or null if no json could be found or it was invalid
+	 */
+	public static Object parse(String s) {
+		return s == null ? null : parse(s, 0, s.length());
+	}
+
+	/**
+	 * Same as {@link #parse(String)} for the part of the string between {@code from} and {@code to}
+	 */
+	public static Object parse(String s, int from, int to) {
+		TolerantJsonParser parser = new TolerantJsonParser(s, from, to);
+		if (!parser.skipToJson()) return null;
+
+		Object value = parser.value();
+		return value == FAIL ? null : value;
+	}
+
+	private boolean skipToJson() {
+		while (pos < end && s.charAt(pos) != '{' && s.charAt(pos) != '[') pos++;
+		return pos < end;
+	}
+
+	private Object value() {
+		skipSpaces();
+		if (pos >= end) return FAIL;
+
+		char c = s.charAt(pos);
+		switch (c) {
+			case '{':
+			case '[':
+				if (depth == MAX_DEPTH) return FAIL;
+				depth++;
+				Object nested = c == '{' ? object() : array();
+				depth--;
+				return nested;
+			case '"':
+			case '\'': return string(c);
+			default:
+				if (c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9')) return number();
+				return literal();
+		}
+	}
+
+	private Object object() {
+		pos++; // {
+		JSONObject object = new JSONObject();
+
+		while (true) {
+			skipSpaces();
+			if (pos >= end) return FAIL;
+			if (s.charAt(pos) == '}') {
+				pos++;
+				return object;
+			}
+
+			Object key = key();
+			if (key == FAIL) return FAIL;
+			skipSpaces();
+			if (pos >= end || s.charAt(pos++) != ':') return FAIL;
+
+			Object value = value();
+			if (value == FAIL) return FAIL;
+			object.put((String) key, value);
+
+			skipSpaces();
+			if (pos >= end) return FAIL;
+			char c = s.charAt(pos++);
+			if (c == '}') return object;
+			if (c != ',') return FAIL;
+		}
+	}
+
+	private Object array() {
+		pos++; // [
+		JSONArray array = new JSONArray();
+
+		while (true) {
+			skipSpaces();
+			if (pos >= end) return FAIL;
+			if (s.charAt(pos) == ']') {
+				pos++;
+				return array;
+			}
+
+			Object value = value();
+			if (value == FAIL) return FAIL;
+			array.add(value);
+
+			skipSpaces();
+			if (pos >= end) return FAIL;
+			char c = s.charAt(pos++);
+			if (c == ']') return array;
+			if (c != ',') return FAIL;
+		}
+	}
+
+	private Object key() {
+		char c = s.charAt(pos);
+		if (c == '"' || c == '\'') return string(c);
+
+		int start = pos;
+		while (pos < end && isIdentifierChar(s.charAt(pos))) pos++;
+		return start == pos ? FAIL : s.substring(start, pos);
+	}
+
+	/**
+	 * The string is only copied once, and only built char by char if it has escapes
+	 */
+	private Object string(char quote) {
+		int start = ++pos;
+		while (pos < end) {
+			char c = s.charAt(pos);
+			if (c == quote) return s.substring(start, pos++);
+			if (c == '\\') return escapedString(quote, start);
+			pos++;
+		}
+		return FAIL;
+	}
+
+	private Object escapedString(char quote, int start) {
+		StringBuilder sb = new StringBuilder(pos - start + 16).append(s, start, pos);
+		while (pos < end) {
+			char c = s.charAt(pos++);
+			if (c == quote) return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			if (pos >= end) return FAIL;
+
+			char e = s.charAt(pos++);
+			switch (e) {
+				case 'n': sb.append('\n'); break;
+				case 't': sb.append('\t'); break;
+				case 'r': sb.append('\r'); break;
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'u':
+					if (pos + 4 > end) return FAIL;
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(s.charAt(pos++), 16);
+						if (digit < 0) return FAIL;
+						code = code * 16 + digit;
+					}
+					sb.append((char) code);
+					break;
+				default: sb.append(e);
+			}
+		}
+		return FAIL;
+	}
+
+	private Object number() {
+		int start = pos;
+		if (s.charAt(pos) == '+') start = ++pos;
+		else if (s.charAt(pos) == '-') pos++;
+
+		boolean decimal = false;
+		int digits = digits();
+		if (pos < end && s.charAt(pos) == '.') {
+			decimal = true;
+			pos++;
+			digits += digits();
+		}
+		if (digits == 0) return FAIL;
+
+		if (pos < end && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+			decimal = true;
+			pos++;
+			if (pos < end && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) pos++;
+			if (digits() == 0) return FAIL;
+		}
+
+		String number = s.substring(start, pos);
+		return decimal ? decimal(number) : integer(number);
+	}
+
+	private int digits() {
+		int start = pos;
+		while (pos < end && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') pos++;
+		return pos - start;
+	}
+
+	private static Object integer(String number) {
+		int digits = number.charAt(0) == '-' ? number.length() - 1 : number.length();
+		if (digits <= 9) return Integer.valueOf(number);
+		if (digits <= 18) {
+			long l = Long.parseLong(number);
+			return l == (int) l ? Integer.valueOf((int) l) : (Object) l;
+		}
+		BigInteger big = new BigInteger(number);
+		return big.bitLength() <= 63 ? (Object) big.longValue() : big;
+	}
+
+	/**
+	 * Mirrors json-smart: doubles, unless there are too many digits for a double to hold
+	 */
+	private static Object decimal(String number) {
+		return number.length() > 18 ? new BigDecimal(number) : (Object) Double.valueOf(number);
+	}
+
+	private Object literal() {
+		int start = pos;
+		while (pos < end && isIdentifierChar(s.charAt(pos))) pos++;
+
+		switch (s.substring(start, pos)) {
+			case "true": return Boolean.TRUE;
+			case "false": return Boolean.FALSE;
+			case "null":
+			case "undefined": return null;
+			default: return FAIL;
+		}
+	}
+
+	/**
+	 * Skips whitespace and js comments
+	 */
+	private void skipSpaces() {
+		while (pos < end) {
+			char c = s.charAt(pos);
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || Character.isWhitespace(c)) pos++;
+			else if (c == '/' && pos + 1 < end && s.charAt(pos + 1) == '/') {
+				while (pos < end && s.charAt(pos) != '\n') pos++;
+			} else if (c == '/' && pos + 1 < end && s.charAt(pos + 1) == '*') {
+				int close = s.indexOf("*/", pos + 2);
+				pos = close < 0 || close + 2 > end ? end : close + 2;
+			} else return;
+		}
+	}
+
+	private static boolean isIdentifierChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '-';
+	}
+}
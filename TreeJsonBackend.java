@@ -0,0 +1,82 @@
+package blackbee.swarm.parsinghelper;
+
+import net.minidev.json.JSONValue;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses in a single tolerant pass with {@link TolerantJsonParser} and reads definite paths by walking the tree directly,
+ * without JsonPath. Paths that are not definite are handed to {@link JsonPathBackend}.
+ *
+ * @author dpozinen
+ */
+final class TreeJsonBackend implements JsonBackend {
+
+	static final TreeJsonBackend INSTANCE = new TreeJsonBackend();
+
+	private TreeJsonBackend() {
+	}
+
+	@Override
+	public Object parse(String json) {
+		return TolerantJsonParser.parse(json);
+	}
+
+	@Override
+	public Object parse(String json, int from, int to) {
+		return TolerantJsonParser.parse(json, from, to);
+	}
+
+	@Override
+	public Object read(Object tree, String path) {
+		Object[] segments = StreamingJsonExtractor.segments(path);
+		if (segments == null) return JsonPathBackend.INSTANCE.read(tree, path);
+
+		Object node = tree;
+		for (int i = 0; i < segments.length && node != null; i++)
+			node = child(node, segments[i]);
+		return node;
+	}
+
+	@Override
+	public Object set(Object tree, String path, Object value) {
+		Object[] segments = StreamingJsonExtractor.segments(path);
+		if (segments == null) return JsonPathBackend.INSTANCE.set(tree, path, value);
+		if (segments.length == 0) return value;
+
+		Object parent = tree;
+		for (int i = 0; i < segments.length - 1 && parent != null; i++)
+			parent = child(parent, segments[i]);
+
+		Object last = segments[segments.length - 1];
+		if (last instanceof String && parent instanceof Map) {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = (Map<String, Object>) parent;
+			map.put((String) last, value);
+		} else if (last instanceof Integer && parent instanceof List && (Integer) last < ((List<?>) parent).size()) {
+			@SuppressWarnings("unchecked")
+			List<Object> list = (List<Object>) parent;
+			list.set((Integer) last, value);
+		}
+		return tree;
+	}
+
+	private static Object child(Object node, Object segment) {
+		if (segment instanceof String)
+			return node instanceof Map ? ((Map<?, ?>) node).get(segment) : null;
+
+		int index = (Integer) segment;
+		return node instanceof List && index < ((List<?>) node).size() ? ((List<?>) node).get(index) : null;
+	}
+
+	@Override
+	public String serialize(Object tree) {
+		return JSONValue.toJSONString(tree);
+	}
+
+	@Override
+	public String toString() {
+		return "Tree";
+	}
+}
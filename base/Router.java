@@ -7,6 +7,8 @@ import blackbee.swarm.core.swarm.parsers.framework.IWebRequestStep;
 import blackbee.swarm.core.swarm.parsers.framework.WebRequestStepException;
 import blackbee.swarm.core.swarm.resultmodel.IResultEntrySet;
 import blackbee.swarm.core.web.IProxy;
+import blackbee.swarm.parsinghelper.JsonBackend;
+import blackbee.swarm.parsinghelper.JsonBackends;
 import blackbee.swarm.parsinghelper.JsonUtils;
 import blackbee.swarm.parsinghelper.UriWrapper;
 import blackbee.swarm.parsinghelper.filter.Filter;
@@ -57,10 +59,15 @@ public abstract class Router<H extends Helper> extends BaseWebRequestStep implem
 
 	@Override @Deprecated
 	protected INavigationStep[] runCore(IResultEntrySet results) throws WebRequestStepException {
-		document = Filter.fromResponse(this);
-		List<Step> nextSteps = new ArrayList<>();
-		mapResponse(nextSteps);
-		return nextSteps.toArray(new INavigationStep[0]);
+		JsonBackend previous = JsonBackends.use(JsonBackends.of(getClass()));
+		try {
+			document = Filter.fromResponse(this);
+			List<Step> nextSteps = new ArrayList<>();
+			mapResponse(nextSteps);
+			return nextSteps.toArray(new INavigationStep[0]);
+		} finally {
+			JsonBackends.use(previous);
+		}
 	}
 
 	/**
@@ -195,7 +202,7 @@ public abstract class Router<H extends Helper> extends BaseWebRequestStep implem
 	}
 
 	public final JsonContext getJsonResponse() {
-		return JsonUtils.parse(getResponseContent());
+		return JsonUtils.parse(getResponseContent(), JsonBackends.of(getClass()));
 	}
 
 	@Override
@@ -0,0 +1,132 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+
+/**
+ * Finds several strings in a text in a single pass over it.
+ * The automaton is immutable once built, so it can be shared between threads.
+ *
+ * @author dpozinen
+ */
+final class AhoCorasick {
+
+	private final String[] needles;
+	/**
+	 * All the distinct chars of the needles, sorted. Chars that are not in here share column 0 of {@link #delta}
+	 */
+	private final char[] alphabet;
+	private final int width;
+	/**
+	 * The full transition table, {@code width} columns per state
+	 */
+	private final int[] delta;
+	/**
+	 * Indices of the needles that end in each state, including the ones reachable by failure links
+	 */
+	private final int[][] outputs;
+
+	AhoCorasick(Collection<String> words) {
+		needles = words.toArray(new String[0]);
+
+		TreeSet<Character> chars = new TreeSet<>();
+		for (String needle : needles)
+			for (int i = 0; i < needle.length(); i++)
+				chars.add(needle.charAt(i));
+		alphabet = new char[chars.size()];
+		int a = 0;
+		for (Character c : chars) alphabet[a++] = c;
+		width = alphabet.length + 1;
+
+		List<int[]> rows = new ArrayList<>();
+		List<List<Integer>> out = new ArrayList<>();
+		newState(rows, out);
+
+		for (int k = 0; k < needles.length; k++) {
+			int state = 0;
+			for (int i = 0; i < needles[k].length(); i++) {
+				int column = column(needles[k].charAt(i));
+				if (rows.get(state)[column] < 0) rows.get(state)[column] = newState(rows, out);
+				state = rows.get(state)[column];
+			}
+			out.get(state).add(k);
+		}
+
+		int[] fail = new int[rows.size()];
+		Queue<Integer> queue = new ArrayDeque<>();
+		int[] root = rows.get(0);
+		for (int column = 0; column < width; column++)
+			if (root[column] < 0) root[column] = 0;
+			else queue.add(root[column]);
+
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			int[] row = rows.get(state);
+			int[] failRow = rows.get(fail[state]);
+			if (state != 0) out.get(state).addAll(out.get(fail[state]));
+
+			for (int column = 0; column < width; column++)
+				if (row[column] < 0) row[column] = failRow[column];
+				else {
+					fail[row[column]] = state == 0 ? 0 : failRow[column];
+					queue.add(row[column]);
+				}
+		}
+
+		delta = new int[rows.size() * width];
+		outputs = new int[rows.size()][];
+		for (int state = 0; state < rows.size(); state++) {
+			System.arraycopy(rows.get(state), 0, delta, state * width, width);
+			List<Integer> o = out.get(state);
+			outputs[state] = new int[o.size()];
+			for (int i = 0; i < o.size(); i++) outputs[state][i] = o.get(i);
+		}
+	}
+
+	private int newState(List<int[]> rows, List<List<Integer>> out) {
+		int[] row = new int[width];
+		Arrays.fill(row, -1);
+		rows.add(row);
+		out.add(new ArrayList<Integer>(1));
+		return rows.size() - 1;
+	}
+
+	private int column(char c) {
+		int i = Arrays.binarySearch(alphabet, c);
+		return i < 0 ? 0 : i + 1;
+	}
+
+	String needle(int k) {
+		return needles[k];
+	}
+
+	/**
+	 * Scans the texts in order, stopping as soon as every needle has been found.
+	 *
+	 * @return for each needle, the index of the first text that contains it, or -1
+	 */
+	int[] firstContaining(String[] texts) {
+		int[] first = new int[needles.length];
+		Arrays.fill(first, -1);
+		int remaining = needles.length;
+
+		for (int t = 0; t < texts.length && remaining > 0; t++) {
+			String text = texts[t];
+			int state = 0;
+			for (int i = 0; i < text.length(); i++) {
+				state = delta[state * width + column(text.charAt(i))];
+				for (int k : outputs[state])
+					if (first[k] < 0) {
+						first[k] = t;
+						remaining--;
+					}
+			}
+		}
+		return first;
+	}
+}
@@ -0,0 +1,70 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read only view of the child elements of an element, behind {@link Filter#childView()}. The children are read
+ * from the element on first use, and wrapped into filters only when they are read from the view.
+ * <p>
+ * The walks over the element tree don't create views, they read the children with {@link #collect} into a buffer,
+ * that is reused for every visited element, see {@link ElementStack#pushChildren}.
+ *
+ * @author dpozinen
+ */
+final class ChildView extends AbstractList<Filter> implements RandomAccess {
+
+	private final Filter owner;
+	private final IHtmlElement parent;
+	private volatile IHtmlElement[] elements;
+
+	/**
+	 * @param owner the filter the children are wrapped by, so that they belong to the same document
+	 */
+	ChildView(Filter owner, IHtmlElement parent) {
+		this.owner = owner;
+		this.parent = parent;
+	}
+
+	/**
+	 * Adds the child elements of the parent to the list, in document order
+	 */
+	static void collect(IHtmlElement parent, List<IHtmlElement> into) {
+		if (!parent.getHasChildElements()) return;
+		for (IHtmlElement child : parent.getChildElements())
+			into.add(child);
+	}
+
+	@Override
+	public Filter get(int i) {
+		return owner.wrap(element(i));
+	}
+
+	/**
+	 * @return the child element at the index, without wrapping it into a filter
+	 */
+	IHtmlElement element(int i) {
+		IHtmlElement[] elements = elements();
+		if (i < 0 || i >= elements.length) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + elements.length);
+		return elements[i];
+	}
+
+	@Override
+	public int size() {
+		return elements().length;
+	}
+
+	private IHtmlElement[] elements() {
+		IHtmlElement[] elements = this.elements;
+		if (elements == null) {
+			List<IHtmlElement> children = new ArrayList<>();
+			collect(parent, children);
+			this.elements = elements = children.toArray(new IHtmlElement[0]);
+		}
+		return elements;
+	}
+}
@@ -1,5 +1,14 @@
 package blackbee.swarm.parsinghelper.filter;
 
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * An abstract class providing a way to test filters for specific conditions.
  * Provides predefined implementations for basic cases.
@@ -28,6 +37,18 @@ package blackbee.swarm.parsinghelper.filter;
  */
 public abstract class Condition {
 
+	/**
+	 * How expensive it is to test a condition, see {@link #cost()}
+	 */
+	static final int ATTRIBUTE = 0, TEXT = 1, PATH_TEXT = 2, SCRIPT = 3, CUSTOM = 4;
+
+	private static final Comparator<Condition> BY_COST = new Comparator<Condition>() {
+		@Override
+		public int compare(Condition a, Condition b) {
+			return Integer.compare(a.cost(), b.cost());
+		}
+	};
+
 	/**
 	 * The function which will have the condition logic the that filter will be tested
 	 * by.
@@ -36,122 +57,342 @@ public abstract class Condition {
 	 */
 	public abstract boolean test(Filter f);
 
+	/**
+	 * Lets deep scans of an indexed document only test the elements that have this attribute, see {@link ElementIndex}
+	 *
+	 * @return the name of the attribute an element must have to match this condition, or null if there is no such attribute
+	 */
+	String indexedAttribute() {
+		return null;
+	}
+
+	/**
+	 * {@link #and} and {@link #or} test their cheaper operands first
+	 *
+	 * @return how expensive this condition is to test, conditions not defined here are assumed to be the most expensive
+	 */
+	int cost() {
+		return CUSTOM;
+	}
+
+	/**
+	 * Tests the element of the probe. The predefined conditions read the text and the script through the probe,
+	 * so that all the operands of an {@link #and} or {@link #or} share them.
+	 */
+	boolean test(Probe p) {
+		return test(p.filter());
+	}
+
 	public static Condition not(final Condition other) {
 		return new Condition() {
 			@Override public boolean test(Filter f) {
 				return !other.test(f);
 			}
+
+			@Override boolean test(Probe p) {
+				return !other.test(p);
+			}
+
+			@Override int cost() {
+				return other.cost();
+			}
 		};
 	}
 
 	/**
 	 * An ability to chain Condition calls, so that the following is possible
 	 * {@code Condition.textIs("text", "is").or(Condition.textIs("text", "IS"))}
+	 * <p>
+	 * Chains are flattened into a single condition, that reads the text and the script of an element only once.
+	 * The predefined conditions between two custom ones are tested cheapest first (attributes before texts and
+	 * scripts), custom conditions are always tested in the order they were chained, so a custom guard placed first
+	 * still short-circuits everything after it.
 	 * @param other other condition to test
 	 * @return this.condition || other.condition
 	 */
 	public final Condition or(final Condition other) {
-		final Condition thisCondition = this;
-		return new Condition() {
-			@Override
-			public boolean test(Filter f) {
-				return thisCondition.test(f) || other.test(f);
-			}
-		};
+		return new Junction(false, this, other);
 	}
 
 	/**
 	 * @see #or(Condition)
 	 */
 	public final Condition and(final Condition other) {
-		final Condition thisCondition = this;
-		return new Condition() {
-			@Override
-			public boolean test(Filter f) {
-				return thisCondition.test(f) && other.test(f);
-			}
-		};
+		return new Junction(true, this, other);
 	}
 
 	public static Condition attributeContainsIgnoreCase(final String name, final String contains) {
-		return new Condition() {
+		final String needle = StringUtils.lowerCase(contains);
+		return new Leaf(ATTRIBUTE) {
+			@Override
+			boolean test(Probe p) {
+				return p.filter().attribute(name).toLowerCase().contains(needle);
+			}
+
 			@Override
-			public boolean test(Filter t) {
-				return t.attribute(name).toLowerCase().contains(contains.toLowerCase());
+			String indexedAttribute() {
+				return StringUtils.isEmpty(contains) || StringUtils.isBlank(name) ? null : name;
 			}
 		};
 	}
 
 	public static Condition textIs(final String is) {
-		return new Condition() {
+		return new Leaf(TEXT) {
 			@Override
-			public boolean test(Filter t) {
-				return t.text().equals(is);
+			boolean test(Probe p) {
+				return p.text(true).equals(is);
 			}
 		};
 	}
 
 	public static Condition textIsIgnoreCase(final String is) {
-		return new Condition() {
+		return new Leaf(TEXT) {
 			@Override
-			public boolean test(Filter t) {
-				return t.text().equalsIgnoreCase(is);
+			boolean test(Probe p) {
+				return p.text(true).equalsIgnoreCase(is);
 			}
 		};
 	}
 
 	public static Condition textIsIgnoreCase(final String path, final String is) {
-		return new Condition() {
+		return new Leaf(PATH_TEXT) {
 			@Override
-			public boolean test(Filter t) {
-				return t.filter(path).text().equalsIgnoreCase(is);
+			boolean test(Probe p) {
+				return p.text(path).equalsIgnoreCase(is);
 			}
 		};
 	}
 
 	public static Condition textContains(final String contains, final boolean includeChildren) {
-		return new Condition() {
+		return new Leaf(TEXT) {
 			@Override
-			public boolean test(Filter t) {
-				return t.text(0, includeChildren).contains(contains);
+			boolean test(Probe p) {
+				return p.text(includeChildren).contains(contains);
 			}
 		};
 	}
 
 	public static Condition textContainsIgnoreCase(final String contains) {
-		return new Condition() {
+		final String needle = StringUtils.lowerCase(contains);
+		return new Leaf(TEXT) {
 			@Override
-			public boolean test(Filter t) {
-				return t.text().toLowerCase().contains(contains.toLowerCase());
+			boolean test(Probe p) {
+				return p.lowerText().contains(needle);
 			}
 		};
 	}
 
 	public static Condition textContainsIgnoreCase(final String path, final String contains) {
-		return new Condition() {
+		final String needle = StringUtils.lowerCase(contains);
+		return new Leaf(PATH_TEXT) {
 			@Override
-			public boolean test(Filter t) {
-				return t.filter(path).text().toLowerCase().contains(contains.toLowerCase());
+			boolean test(Probe p) {
+				return p.lowerText(path).contains(needle);
 			}
 		};
 	}
 
 	public static Condition scriptContains(final String contains) {
-		return new Condition() {
-			@Override
-			public boolean test(Filter t) {
-				return t.script().contains(contains);
-			}
-		};
+		return new ScriptCondition(contains, false);
 	}
 
 	public static Condition scriptStartsWith(final String s) {
-		return new Condition() {
-			@Override
-			public boolean test(Filter t) {
-				return t.script().startsWith(s);
+		return new ScriptCondition(s, true);
+	}
+
+	/**
+	 * Kept as a separate class, so that {@link Filter#firstScript(Condition)} can look the needle up in the
+	 * {@link ScriptIndex} of the document, instead of testing every script
+	 */
+	static final class ScriptCondition extends Leaf {
+		final String needle;
+		final boolean prefix;
+
+		private ScriptCondition(String needle, boolean prefix) {
+			super(SCRIPT);
+			this.needle = needle;
+			this.prefix = prefix;
+		}
+
+		@Override
+		boolean test(Probe p) {
+			Script script = p.script();
+			return prefix ? script.startsWith(needle) : script.contains(needle);
+		}
+	}
+
+	/**
+	 * A predefined condition, that reads what it tests through a {@link Probe}
+	 */
+	abstract static class Leaf extends Condition {
+		private final int cost;
+
+		Leaf(int cost) {
+			this.cost = cost;
+		}
+
+		@Override
+		public final boolean test(Filter f) {
+			return test(new Probe(f));
+		}
+
+		@Override
+		abstract boolean test(Probe p);
+
+		@Override
+		final int cost() {
+			return cost;
+		}
+	}
+
+	/**
+	 * A chain of {@link #and} or {@link #or} calls, flattened. The custom operands stay where they were chained,
+	 * the runs of predefined operands between them are sorted by {@link #cost()}. The sort is stable, so the operands
+	 * of the same cost keep the order they were chained in.
+	 */
+	private static final class Junction extends Condition {
+		private final boolean and;
+		private final Condition[] operands;
+
+		private Junction(boolean and, Condition left, Condition right) {
+			this.and = and;
+			List<Condition> operands = new ArrayList<>();
+			add(operands, left);
+			add(operands, right);
+			this.operands = operands.toArray(new Condition[0]);
+
+			int from = 0;
+			for (int i = 0; i <= this.operands.length; i++)
+				if (i == this.operands.length || this.operands[i].cost() == CUSTOM) {
+					Arrays.sort(this.operands, from, i, BY_COST);
+					from = i + 1;
+				}
+		}
+
+		private void add(List<Condition> operands, Condition c) {
+			if (c instanceof Junction && ((Junction) c).and == and)
+				operands.addAll(Arrays.asList(((Junction) c).operands));
+			else
+				operands.add(c);
+		}
+
+		@Override
+		public boolean test(Filter f) {
+			return test(new Probe(f));
+		}
+
+		@Override
+		boolean test(Probe p) {
+			for (Condition operand : operands)
+				if (operand.test(p) != and) return !and;
+			return and;
+		}
+
+		@Override
+		int cost() {
+			int cost = 0;
+			for (Condition operand : operands) cost = Math.max(cost, operand.cost());
+			return cost;
+		}
+
+		/**
+		 * An element matches all the operands of an and, so it needs the attribute of any of them,
+		 * and an element matching an or needs an attribute only if all of its operands need the same one
+		 */
+		@Override
+		String indexedAttribute() {
+			String attribute = null;
+			for (Condition operand : operands) {
+				String a = operand.indexedAttribute();
+				if (and && a != null) return a;
+				if (!and && (a == null || (attribute != null && !attribute.equals(a)))) return null;
+				attribute = a;
 			}
-		};
+			return attribute;
+		}
+	}
+
+	/**
+	 * What the predefined conditions test for a single element, each read on first use and shared by all of them.
+	 * Deep scans keep one probe and move it to every element they visit with {@link #of(Filter)}, the probe never
+	 * leaves the scan, custom conditions get the filter itself. The texts such a probe reads are not added to the
+	 * {@link TextMemo} of the document, since a scan reads each of them once.
+	 */
+	static final class Probe {
+		private final boolean scan;
+		private Filter filter;
+		private String text;
+		private String ownText;
+		private String lowerText;
+		private Script script;
+		private Map<String, String> pathTexts;
+		private Map<String, String> lowerPathTexts;
+
+		/**
+		 * A probe for a deep scan
+		 */
+		Probe() {
+			this.scan = true;
+		}
+
+		Probe(Filter filter) {
+			this.scan = false;
+			this.filter = filter;
+		}
+
+		/**
+		 * Forgets everything read for the previous element
+		 *
+		 * @return this probe, now of the specified filter
+		 */
+		Probe of(Filter filter) {
+			this.filter = filter;
+			text = ownText = lowerText = null;
+			script = null;
+			if (pathTexts != null) pathTexts.clear();
+			if (lowerPathTexts != null) lowerPathTexts.clear();
+			return this;
+		}
+
+		Filter filter() {
+			return filter;
+		}
+
+		String text(boolean includeChildren) {
+			if (includeChildren) {
+				if (text == null) text = scan ? filter.scanText(true) : filter.text();
+				return text;
+			}
+			if (ownText == null) ownText = scan ? filter.scanText(false) : filter.text(0, false);
+			return ownText;
+		}
+
+		String lowerText() {
+			if (lowerText == null) lowerText = text(true).toLowerCase();
+			return lowerText;
+		}
+
+		String text(String path) {
+			if (pathTexts == null) pathTexts = new HashMap<>(4);
+			String found = pathTexts.get(path);
+			if (found == null) {
+				Filter filtered = filter.filter(path);
+				pathTexts.put(path, found = scan ? filtered.scanText(true) : filtered.text());
+			}
+			return found;
+		}
+
+		String lowerText(String path) {
+			if (lowerPathTexts == null) lowerPathTexts = new HashMap<>(4);
+			String found = lowerPathTexts.get(path);
+			if (found == null) lowerPathTexts.put(path, found = text(path).toLowerCase());
+			return found;
+		}
+
+		Script script() {
+			if (script == null) script = scan ? filter.scanScript() : filter.script();
+			return script;
+		}
 	}
 
 }
@@ -0,0 +1,69 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The depth first traversal behind the deep scans of {@link Filter}. Visits every top level element of a filter and
+ * all of their descendants in document order, testing each one against a {@link Condition}.
+ * <p>
+ * Uses an explicit stack, so that deep documents can't overflow the call stack, and stops as soon as the requested
+ * number of matches is found. The elements are tested through a single {@link Condition.Probe}, so that
+ * the predefined conditions don't allocate anything per element.
+ *
+ * @author dpozinen
+ */
+final class DeepScan {
+
+	private DeepScan() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @param limit the maximum number of matches to collect, the scan stops once it is reached
+	 * @return the matching elements, as filters, in document order
+	 */
+	static List<Filter> find(Filter from, Condition condition, int limit) {
+		List<Filter> found = new ArrayList<>();
+		if (limit <= 0 || from.isEmpty()) return found;
+
+		ElementIndex index = from.rootIndex();
+		String attribute = condition.indexedAttribute();
+		if (index != null && attribute != null && from.size() == 1)
+			return find(from, condition, limit, index.withAttribute(attribute));
+
+		ElementStack stack = new ElementStack();
+		for (int i = from.size() - 1; i >= 0; i--)
+			stack.push(from.element(i), 0L);
+
+		Condition.Probe probe = new Condition.Probe();
+		while (!stack.isEmpty()) {
+			IHtmlElement e = stack.pop();
+			Filter f = from.wrap(e);
+
+			if (condition.test(probe.of(f))) {
+				found.add(f);
+				if (found.size() == limit) break;
+			}
+			stack.pushChildren(e, 0L);
+		}
+		return found;
+	}
+
+	/**
+	 * The same scan for the whole document, that only tests the elements that can match, taken from its index
+	 */
+	private static List<Filter> find(Filter document, Condition condition, int limit, List<IHtmlElement> candidates) {
+		List<Filter> found = new ArrayList<>();
+		if (document.matches(condition)) found.add(document.first());
+
+		Condition.Probe probe = new Condition.Probe();
+		for (int i = 0; i < candidates.size() && found.size() < limit; i++) {
+			Filter f = document.wrap(candidates.get(i));
+			if (condition.test(probe.of(f))) found.add(f);
+		}
+		return found;
+	}
+}
@@ -0,0 +1,60 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.IHtmlElementFilter;
+
+/**
+ * Everything that is computed once per document and shared by all the filters derived from it.
+ * Created by the factory methods of {@link Filter} that produce a whole document, and passed along to every
+ * filter created from that one. Dropped together with the last filter of the document.
+ *
+ * @author dpozinen
+ */
+final class DocumentCache {
+
+	private final IHtmlElementFilter root;
+	/**
+	 * The class of the step the document was created by, null if it was not created by a step
+	 */
+	private final Class<?> parser;
+	private final TextMemo texts = new TextMemo();
+	private boolean indexEnabled;
+	private ElementIndex index;
+	private ScriptIndex scripts;
+
+	DocumentCache(IHtmlElementFilter root, Class<?> parser) {
+		this.root = root;
+		this.parser = parser;
+	}
+
+	/**
+	 * @return true if the provided filter is the one of the whole document
+	 */
+	boolean isRoot(IHtmlElementFilter filter) {
+		return filter == root;
+	}
+
+	TextMemo texts() {
+		return texts;
+	}
+
+	synchronized void enableIndex() {
+		indexEnabled = true;
+	}
+
+	/**
+	 * @return the index of the document, built on the first call, or null if it was not enabled
+	 */
+	synchronized ElementIndex index() {
+		if (!indexEnabled) return null;
+		if (index == null) index = new ElementIndex(root);
+		return index;
+	}
+
+	/**
+	 * @return the scripts of the document, collected on the first call
+	 */
+	synchronized ScriptIndex scripts() {
+		if (scripts == null) scripts = new ScriptIndex(root, texts, parser);
+		return scripts;
+	}
+}
@@ -0,0 +1,132 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.common.data.Key;
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+import blackbee.swarm.core.parsing.html.IHtmlElementFilter;
+import blackbee.swarm.core.parsing.html.IHtmlNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of all the elements of a document by tag name, id, class and attribute name.
+ * Every list of the index is in document order.
+ * <p>
+ * Built in a single walk the first time it is needed, see {@link Filter#indexed()}. After that
+ * {@code ***.tag[...]} paths and deep scans with {@link Condition#attributeContainsIgnoreCase} on the document
+ * become lookups instead of walks over the whole document.
+ * Whether that pays off depends on the site, so the index reports its own size.
+ *
+ * @author dpozinen
+ */
+public final class ElementIndex {
+
+	private final Map<String, List<IHtmlElement>> byTag = new HashMap<>();
+	private final Map<String, List<IHtmlElement>> byId = new HashMap<>();
+	private final Map<String, List<IHtmlElement>> byClass = new HashMap<>();
+	private final Map<String, List<IHtmlElement>> byAttribute = new HashMap<>();
+	private int elementCount;
+	private int entryCount;
+
+	/**
+	 * Indexes all the descendants of the provided elements, but not the elements themselves
+	 */
+	ElementIndex(IHtmlElementFilter roots) {
+		ElementStack stack = new ElementStack();
+		for (IHtmlElement root : roots) {
+			stack.pushChildren(root, 0L);
+			while (!stack.isEmpty()) {
+				IHtmlElement e = stack.pop();
+				add(e);
+				stack.pushChildren(e, 0L);
+			}
+		}
+	}
+
+	private void add(IHtmlElement e) {
+		elementCount++;
+		if (e.getTagName() != null)
+			put(byTag, e.getTagName().toLowerCase(), e);
+
+		IHtmlNode.IHtmlNodeAttributeCollection attributes = e.getAttributes();
+		if (attributes == null) return;
+
+		Key[] keys = attributes.getKeys();
+		Object[] values = attributes.getValues();
+		for (int i = 0; i < keys.length; i++) {
+			String name = String.valueOf(keys[i]).toLowerCase();
+			put(byAttribute, name, e);
+
+			if (i >= values.length || values[i] == null) continue;
+			String value = String.valueOf(values[i]);
+			if ("id".equals(name))
+				put(byId, value, e);
+			else if ("class".equals(name))
+				for (String token : value.split("\\s+"))
+					if (!token.isEmpty()) put(byClass, token, e);
+		}
+	}
+
+	private void put(Map<String, List<IHtmlElement>> map, String key, IHtmlElement e) {
+		List<IHtmlElement> list = map.get(key);
+		if (list == null) map.put(key, list = new ArrayList<>(2));
+		if (list.isEmpty() || list.get(list.size() - 1) != e) {
+			list.add(e);
+			entryCount++;
+		}
+	}
+
+	List<IHtmlElement> withTag(String tag) {
+		return get(byTag, tag.toLowerCase());
+	}
+
+	List<IHtmlElement> withId(String id) {
+		return get(byId, id);
+	}
+
+	List<IHtmlElement> withClass(String token) {
+		return get(byClass, token);
+	}
+
+	/**
+	 * @param name the attribute name, case insensitive
+	 */
+	List<IHtmlElement> withAttribute(String name) {
+		return get(byAttribute, name.toLowerCase());
+	}
+
+	private static List<IHtmlElement> get(Map<String, List<IHtmlElement>> map, String key) {
+		List<IHtmlElement> list = map.get(key);
+		return list == null ? Collections.<IHtmlElement>emptyList() : list;
+	}
+
+	/**
+	 * @return the number of indexed elements
+	 */
+	public int elementCount() {
+		return elementCount;
+	}
+
+	/**
+	 * @return the number of distinct tags, ids, classes and attribute names
+	 */
+	public int keyCount() {
+		return byTag.size() + byId.size() + byClass.size() + byAttribute.size();
+	}
+
+	/**
+	 * @return the total number of references to elements held by the index,
+	 * the memory taken by the index is roughly proportional to it
+	 */
+	public int entryCount() {
+		return entryCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ElementIndex{elements=%d, keys=%d, entries=%d}", elementCount, keyCount(), entryCount);
+	}
+}
@@ -0,0 +1,66 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+
+import java.util.ArrayList;
+
+/**
+ * An explicit stack for depth first walks over the element tree, so that deep documents can't overflow the call stack.
+ * Each element is pushed together with a {@code long} of state, which the walk can use as it pleases
+ * (selector steps that are still pending, depth etc.).
+ * <p>
+ * Children are pushed in reverse, so popping yields the elements in document order.
+ *
+ * @author dpozinen
+ */
+final class ElementStack {
+
+	private IHtmlElement[] elements = new IHtmlElement[64];
+	private long[] states = new long[64];
+	private int size;
+
+	/**
+	 * Reused between calls to {@link #pushChildren}, so that a walk does not allocate a list per visited node
+	 */
+	private final ArrayList<IHtmlElement> scratch = new ArrayList<>();
+
+	void push(IHtmlElement e, long state) {
+		if (size == elements.length) {
+			IHtmlElement[] e2 = new IHtmlElement[size * 2];
+			long[] s2 = new long[size * 2];
+			System.arraycopy(elements, 0, e2, 0, size);
+			System.arraycopy(states, 0, s2, 0, size);
+			elements = e2;
+			states = s2;
+		}
+		elements[size] = e;
+		states[size++] = state;
+	}
+
+	/**
+	 * Pushes the child elements of {@code e}, all with the same state, so that the first child is popped first
+	 */
+	void pushChildren(IHtmlElement e, long state) {
+		ChildView.collect(e, scratch);
+		for (int i = scratch.size() - 1; i >= 0; i--)
+			push(scratch.get(i), state);
+		scratch.clear();
+	}
+
+	/**
+	 * @return the state of the top element, should be called before {@link #pop()}
+	 */
+	long peekState() {
+		return states[size - 1];
+	}
+
+	IHtmlElement pop() {
+		IHtmlElement e = elements[--size];
+		elements[size] = null;
+		return e;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -5,6 +5,8 @@ import blackbee.swarm.core.parsing.html.*;
 import blackbee.swarm.core.swarm.parsers.framework.BaseWebRequestStep;
 import blackbee.swarm.core.web.Uri;
 import blackbee.swarm.parsinghelper.BasicParsingHelper;
+import blackbee.swarm.parsinghelper.BoundedCache;
+import blackbee.swarm.parsinghelper.PriceScanner;
 import blackbee.swarm.parsinghelper.PricingHelper;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -12,6 +14,10 @@ import org.apache.commons.lang3.tuple.Pair;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.util.Objects.requireNonNull;
 
@@ -32,8 +38,23 @@ import static java.util.Objects.requireNonNull;
 public class Filter implements Iterable<Filter> {
 
 	private static final Filter EMPTY = new Filter();
-	private final IHtmlElementFilter filter;
+	private static final BoundedCache<String, Pattern> PATTERNS = new BoundedCache<>(256);
+	/**
+	 * null for a {@link #single} element, until {@link #elementFilter()} creates it for a path that is not
+	 * {@link Selector#compile(String) compiled} or for {@link #iHtmlFilter()}
+	 */
+	private volatile IHtmlElementFilter filter;
+	/**
+	 * The element of a single element filter, which is what {@link #get(int)}, {@link #first()}, {@link #children()}
+	 * and the iterator return. Size, text and attributes are answered from it directly, and no {@link IHtmlElementFilter}
+	 * is created for it, unless it is needed for filtering by a path that is not compiled.
+	 */
+	private final IHtmlElement single;
 	private final boolean innerEmpty;
+	/**
+	 * Shared by all filters of the same document, null if this filter was not created from a whole document
+	 */
+	private final DocumentCache doc;
 
 	/**
 	 * Should only be used to construct an empty instance of {@link Filter}
@@ -41,11 +62,36 @@ public class Filter implements Iterable<Filter> {
 	private Filter() {
 		innerEmpty = true;
 		filter = null;
+		single = null;
+		doc = null;
 	}
 
 	private Filter(IHtmlElementFilter o) {
+		this(o, null);
+	}
+
+	private Filter(IHtmlElementFilter o, DocumentCache doc) {
 		filter = o;
+		single = null;
+		innerEmpty = false;
+		this.doc = doc;
+	}
+
+	private Filter(IHtmlElement single, DocumentCache doc) {
+		this.single = single;
 		innerEmpty = false;
+		this.doc = doc;
+	}
+
+	private static Filter fromDocument(IHtmlElementFilter o) {
+		return fromDocument(o, null);
+	}
+
+	/**
+	 * @param parser the class of the step the document was created by
+	 */
+	private static Filter fromDocument(IHtmlElementFilter o, Class<?> parser) {
+		return new Filter(o, new DocumentCache(o, parser));
 	}
 
 	/**
@@ -61,7 +107,7 @@ public class Filter implements Iterable<Filter> {
 	 * {@link IHtmlElement}
 	 */
 	public static Filter fromElement(IHtmlElement e) {
-		return new Filter(new HtmlElementFilter(e));
+		return e == null ? EMPTY : new Filter(e, null);
 	}
 
 	/**
@@ -72,7 +118,7 @@ public class Filter implements Iterable<Filter> {
 	 */
 	public static Filter fromString(String s, Uri uri, IHtmlParserProvider provider) {
 		IHtmlDocument doc = provider.parseWithJSoup(s, uri, "UTF-8");
-		return new Filter(new HtmlElementFilter(doc));
+		return fromDocument(new HtmlElementFilter(doc));
 	}
 
 	/**
@@ -80,7 +126,7 @@ public class Filter implements Iterable<Filter> {
 	 */
 	public static Filter fromString(String s, String url, String charset, IHtmlParserProvider provider) {
 		IHtmlDocument doc = provider.parseWithJSoup(s, new Uri(url), charset);
-		return new Filter(new HtmlElementFilter(doc));
+		return fromDocument(new HtmlElementFilter(doc));
 	}
 
 	/**
@@ -90,7 +136,7 @@ public class Filter implements Iterable<Filter> {
 	 * @return a filter from the response received
 	 */
 	public static Filter fromResponse(BaseWebRequestStep<?, ?> parent) {
-		return new Filter(parent.createDocumentFilter());
+		return fromDocument(parent.createDocumentFilter(), parent.getClass());
 	}
 
 	/**
@@ -104,19 +150,35 @@ public class Filter implements Iterable<Filter> {
 		String content = parent.getResponse().getContent().Content;
 		Uri uri = parent.getResponse().getUri();
 		IHtmlDocument doc = parent.getHtmlParserProvider().parseWithJSoup(content, uri, charset);
-		return new Filter(new HtmlElementFilter(doc));
+		return fromDocument(new HtmlElementFilter(doc), parent.getClass());
 	}
 
 	// #filter
 
 	/**
-	 * Filters the document by the provided path.
+	 * Filters the document by the provided path. Paths opted in with {@link Selector#compile(String)} are run directly,
+	 * all others are filtered by the framework.
 	 *
 	 * @param path a valid path in jsoup syntax
 	 * @return the filter that is created from the resulting path filtering
 	 */
 	public Filter filter(String path) {
-		return isEmpty() ? EMPTY : new Filter(requireNonNull(filter).filterByDataPath(path));
+		return filter(Selector.of(path));
+	}
+
+	/**
+	 * @param selector an already compiled path
+	 * @see #filter(String)
+	 */
+	public Filter filter(Selector selector) {
+		if (isEmpty()) return EMPTY;
+
+		ElementIndex index = rootIndex();
+		IHtmlElementFilter found;
+		if (index != null && selector.isIndexable()) found = selector.select(index);
+		else if (single != null && selector.isCompiled()) found = selector.select(single);
+		else found = selector.select(requireNonNull(elementFilter()));
+		return new Filter(found, doc);
 	}
 
 	/**
@@ -129,14 +191,31 @@ public class Filter implements Iterable<Filter> {
 		return mergeAllToOne(all(condition));
 	}
 
+	/**
+	 * Same as {@link #filter(Condition)}, but large filters are scanned in parallel
+	 *
+	 * @param parallel the pool and threshold to use for the scan
+	 * @see ParallelScan
+	 */
+	public Filter filter(Condition condition, ParallelScan parallel) {
+		return mergeAllToOne(findAll(condition, parallel));
+	}
+
 	/**
 	 * Filters by each path combining all the filters into one.
 	 * This is useful when you have several paths to filter through and you need results from all of them for a terminal operation,
 	 * unlike {@link #first(String, String...)} where the first nonEmpty is needed.
+	 * If all paths have been compiled, they are run in a single walk, see {@link Selector}.
 	 *
-	 * @return a filter containing all filters by the provided paths
+	 * @return a filter containing all filters by the provided paths, in document order and without duplicates
 	 */
 	public Filter filter(String path, String... paths) {
+		if (isEmpty()) return EMPTY;
+		if (paths.length == 0) return filter(path);
+		Selector[] selectors = selectors(path, paths);
+		IHtmlElementFilter found = single != null ? Selector.selectAll(single, selectors, false) : Selector.selectAll(requireNonNull(filter), selectors, false);
+		if (found != null) return new Filter(found, doc);
+
 		List<Filter> filters = new ArrayList<>();
 		filters.add(filter(path));
 
@@ -146,13 +225,20 @@ public class Filter implements Iterable<Filter> {
 	}
 
 	/**
-	 * Filters the document by the provided paths
+	 * Filters the document by the provided paths. If all paths have been compiled, they are run in a single walk,
+	 * and the alternatives stop being matched once a preceding path has matched an element.
 	 *
 	 * @param paths the alternative paths if the first one returns an empty filter
 	 * @return the first result of filtering that is not empty, or the last result if all paths return empty filters.
 	 * @see #filter(String)
 	 */
 	public Filter first(String path, String... paths) {
+		if (paths.length > 0 && isNotEmpty()) {
+			Selector[] selectors = selectors(path, paths);
+			IHtmlElementFilter found = single != null ? Selector.selectAll(single, selectors, true) : Selector.selectAll(requireNonNull(filter), selectors, true);
+			if (found != null) return new Filter(found, doc);
+		}
+
 		Filter f = filter(path);
 
 		if (f.isEmpty())
@@ -164,6 +250,39 @@ public class Filter implements Iterable<Filter> {
 		return f;
 	}
 
+	/**
+	 * Filters by every path, in a single walk if all of them have been compiled
+	 *
+	 * @param paths null paths are skipped
+	 * @return what {@link #filter(String)} returns for each path, null for null paths
+	 */
+	Filter[] filterEach(String... paths) {
+		Filter[] filters = new Filter[paths.length];
+		List<Integer> indices = new ArrayList<>(paths.length);
+		for (int i = 0; i < paths.length; i++)
+			if (paths[i] != null) indices.add(i);
+
+		List<IHtmlElement>[] found = null;
+		if (indices.size() > 1 && isNotEmpty()) {
+			Selector[] selectors = new Selector[indices.size()];
+			for (int k = 0; k < selectors.length; k++) selectors[k] = Selector.of(paths[indices.get(k)]);
+			found = single != null ? Selector.selectEach(single, selectors) : Selector.selectEach(requireNonNull(filter), selectors);
+		}
+
+		for (int k = 0; k < indices.size(); k++) {
+			int i = indices.get(k);
+			filters[i] = found == null ? filter(paths[i]) : new Filter(new HtmlElementFilter(found[k].toArray(new IHtmlElement[0])), doc);
+		}
+		return filters;
+	}
+
+	private static Selector[] selectors(String path, String... paths) {
+		Selector[] selectors = new Selector[paths.length + 1];
+		selectors[0] = Selector.of(path);
+		for (int i = 0; i < paths.length; i++) selectors[i + 1] = Selector.of(paths[i]);
+		return selectors;
+	}
+
 	/**
 	 * Filters by all the provided paths and matches all the results by the
 	 * specified condition.
@@ -181,13 +300,19 @@ public class Filter implements Iterable<Filter> {
 	}
 
 	/**
-	 * Filters through the document by path {@code "***.script"} and finds the first filter to
+	 * Filters through the document by path {@code "***.script"} and finds the first filter to match the condition.
+	 * For the whole document {@link Condition#scriptContains} and {@link Condition#scriptStartsWith} are looked up in its
+	 * {@link ScriptIndex}, so the scripts are collected once, and the needles a parser looks for on every page cost
+	 * a single pass over them.
 	 *
 	 * @param condition any condition to test the filter against, usually {@link Condition#scriptContains} or {@link Condition#scriptStartsWith} since
 	 *                  all other conditions don't really make sense
 	 * @return the first filter to match the {@link Condition}
 	 */
 	public Script firstScript(Condition condition) {
+		if (doc != null && doc.isRoot(filter) && condition instanceof Condition.ScriptCondition)
+			return doc.scripts().first((Condition.ScriptCondition) condition);
+
 		for (Filter f : filter("***.script"))
 			if (f.matches(condition)) return f.script();
 		return EMPTY.script();
@@ -209,11 +334,40 @@ public class Filter implements Iterable<Filter> {
 	 * @return the first filter that matches the given condition
 	 */
 	public Filter first(Condition condition) {
-		List<Filter> all = all(condition);
-		for (Filter f : all)
-			if (f.isNotEmpty())
-				return f;
-		return EMPTY;
+		return findFirst(condition);
+	}
+
+	/**
+	 * Performs a deep scan of the filter in document order, stopping at the first match.
+	 *
+	 * @param condition the condition to match all filters against
+	 * @return the first filter that matches the given condition or an empty filter if none did
+	 */
+	public Filter findFirst(Condition condition) {
+		List<Filter> found = DeepScan.find(this, condition, 1);
+		return found.isEmpty() ? EMPTY : found.get(0);
+	}
+
+	/**
+	 * Performs a deep scan of the filter in document order, stopping once {@code limit} matches are found.
+	 *
+	 * @param condition the condition to match all filters against
+	 * @param limit     the maximum number of filters to return
+	 * @return at most {@code limit} filters that match the given condition
+	 */
+	public List<Filter> findAll(Condition condition, int limit) {
+		return DeepScan.find(this, condition, limit);
+	}
+
+	/**
+	 * Performs a deep scan of the filter, in parallel if the filter is large enough.
+	 *
+	 * @param parallel the pool and threshold to use for the scan
+	 * @return all the filters that match the given condition in document order
+	 * @see ParallelScan
+	 */
+	public List<Filter> findAll(Condition condition, ParallelScan parallel) {
+		return parallel.find(this, condition);
 	}
 
 	/**
@@ -231,6 +385,16 @@ public class Filter implements Iterable<Filter> {
 		return new FilterPath(condition, this).find().paths;
 	}
 
+	/**
+	 * Same as {@link #findPaths(Condition)}, but large filters are scanned in parallel
+	 *
+	 * @param parallel the pool and threshold to use for the scan
+	 * @see ParallelScan
+	 */
+	public List<String> findPaths(Condition condition, ParallelScan parallel) {
+		return parallel.findPaths(this, condition);
+	}
+
 	/**
 	 * Performs a deep scan of the filter, searching ALL the elements of the filter.
 	 *
@@ -240,21 +404,7 @@ public class Filter implements Iterable<Filter> {
 	 */
 	@Deprecated
 	public List<Filter> all(Condition condition) {
-		List<Filter> ret = new ArrayList<>();
-		for (Filter f : this)
-			f.deepFilterAll(condition, ret);
-		return ret;
-	}
-
-	private void deepFilterAll(Condition condition, List<Filter> ret) {
-		if (this.matches(condition))
-			ret.add(this);
-		if (size() > 1)
-			for (Filter f : this)
-				f.deepFilterAll(condition, ret);
-		else
-			for (Filter f : children())
-				f.deepFilterAll(condition, ret);
+		return findAll(condition, Integer.MAX_VALUE);
 	}
 
 	/**
@@ -280,7 +430,8 @@ public class Filter implements Iterable<Filter> {
 	 * any elements, an empty/stub filter is returned.
 	 */
 	public Filter get(int i) {
-		return i >= 0 && size() > i ? Filter.fromElement(requireNonNull(filter).get(i)) : EMPTY;
+		IHtmlElement e = element(i);
+		return e == null ? EMPTY : wrap(e);
 	}
 
 	// #text
@@ -331,11 +482,22 @@ public class Filter implements Iterable<Filter> {
 	}
 
 	public String text(int i, String orElse, boolean includeChildren) {
-		if (size() <= i) return orElse;
-		String asText = requireNonNull(filter).get(i).getAsText(includeChildren);
+		IHtmlElement e = element(i);
+		if (e == null) return orElse;
+		String asText = doc == null ? e.getAsText(includeChildren) : doc.texts().text(e, includeChildren);
 		return asText.isEmpty() ? orElse : asText;
 	}
 
+	/**
+	 * Same as {@link #text(int, boolean)} for the first element, but the text is not added to the memo of the document,
+	 * see {@link TextMemo}. For deep scans, that read the text of every element once.
+	 */
+	String scanText(boolean includeChildren) {
+		IHtmlElement e = element(0);
+		if (e == null) return "";
+		return doc == null ? e.getAsText(includeChildren) : doc.texts().peekText(e, includeChildren);
+	}
+
 	/**
 	 * @return the text of the first element of this filter in normalized form
 	 */
@@ -355,6 +517,8 @@ public class Filter implements Iterable<Filter> {
 	 * @see #textNormalized(int, boolean)
 	 */
 	public String textNormalized(int i, boolean includeChildren) {
+		IHtmlElement e = element(i);
+		if (e != null && doc != null) return doc.texts().textNormalized(e, includeChildren);
 		return BasicParsingHelper.normalizeText(text(i, "", includeChildren));
 	}
 
@@ -362,9 +526,10 @@ public class Filter implements Iterable<Filter> {
 	 * @return the text of all the elements
 	 */
 	public List<String> allText(boolean includeChildren) {
-		List<String> text = new ArrayList<>();
-		for (Filter f : this)
-			text.add(f.text(0, includeChildren));
+		int size = size();
+		List<String> text = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			text.add(text(i, includeChildren));
 		return text;
 	}
 
@@ -380,9 +545,10 @@ public class Filter implements Iterable<Filter> {
 	 * @see #textNormalized()
 	 */
 	public List<String> allTextNormalized(boolean includeChildren) {
-		List<String> text = new ArrayList<>();
-		for (Filter f : this)
-			text.add(f.textNormalized(0, includeChildren));
+		int size = size();
+		List<String> text = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			text.add(textNormalized(i, includeChildren));
 		return text;
 	}
 
@@ -452,8 +618,9 @@ public class Filter implements Iterable<Filter> {
 	 * @see #attribute(String, int)
 	 */
 	public String attribute(String name, int i, String orElse) {
-		if (size() <= i || StringUtils.isBlank(name)) return orElse;
-		IHtmlNode.IHtmlNodeAttributeCollection attributes = requireNonNull(filter).get(i).getAttributes();
+		IHtmlElement e = element(i);
+		if (e == null || StringUtils.isBlank(name)) return orElse;
+		IHtmlNode.IHtmlNodeAttributeCollection attributes = e.getAttributes();
 		return attributes.containsKey(name) && !attributes.get(name).isEmpty() ? attributes.get(name) : orElse;
 	}
 
@@ -461,7 +628,7 @@ public class Filter implements Iterable<Filter> {
 	 * @return the number present in the specified attribute
 	 */
 	public BigDecimal attributeAsNumber(String name, int i) {
-		return PricingHelper.extractNumber(attribute(name, i));
+		return PriceScanner.number(attribute(name, i));
 	}
 
 	/**
@@ -469,10 +636,12 @@ public class Filter implements Iterable<Filter> {
 	 */
 	public List<String> allAttributes(String name) {
 		List<String> attributes = new ArrayList<>();
-		if (StringUtils.isNotBlank(name) && isNotEmpty())
-			for (IHtmlElement element : requireNonNull(filter))
+		if (StringUtils.isNotBlank(name))
+			for (int i = 0; i < size(); i++) {
+				IHtmlElement element = element(i);
 				if (element.getAttributes().containsKey(name))
 					attributes.add(element.getAttributes().get(name));
+			}
 		return attributes;
 	}
 
@@ -501,15 +670,15 @@ public class Filter implements Iterable<Filter> {
 
 	private List<Pair<String, String>> collectAllAttributes() {
 		List<Pair<String, String>> attributes = new ArrayList<>();
-		if (isNotEmpty())
-			for (IHtmlElement element : requireNonNull(filter)) {
-				Key[] keys = element.getAttributes().getKeys();
-				Object[] values = element.getAttributes().getValues();
-
-				if (keys.length == values.length)
-					for (int i = 0; i < keys.length; i++)
-						attributes.add(Pair.of(String.valueOf(keys[i]), String.valueOf(values[i])));
-			}
+		for (int e = 0; e < size(); e++) {
+			IHtmlElement element = element(e);
+			Key[] keys = element.getAttributes().getKeys();
+			Object[] values = element.getAttributes().getValues();
+
+			if (keys.length == values.length)
+				for (int i = 0; i < keys.length; i++)
+					attributes.add(Pair.of(String.valueOf(keys[i]), String.valueOf(values[i])));
+		}
 		return attributes;
 	}
 
@@ -528,17 +697,37 @@ public class Filter implements Iterable<Filter> {
 	 * @see #number(int)
 	 */
 	public BigDecimal number() {
-		return PricingHelper.extractNumber(text());
+		return PriceScanner.number(text());
 	}
 
 	/**
-	 * Extracts the number from the text of the specified element in this filter,
-	 * applying {@link PricingHelper#extractNumber}
+	 * Extracts the number from the text of the specified element in this filter. The common price formats are read
+	 * by {@link PriceScanner}, everything else by {@link PricingHelper#extractNumber}
 	 *
 	 * @return the number with scale of 2 and {@link RoundingMode#HALF_UP}
 	 */
 	public BigDecimal number(int i) {
-		return PricingHelper.extractNumber(text(i));
+		return PriceScanner.number(text(i));
+	}
+
+	/**
+	 * Extracts the price from the text of the specified element in this filter, without creating a BigDecimal
+	 * for the common formats
+	 *
+	 * @return the price in minor units (cents), or {@link PriceScanner#NONE} if the text wasn't numeric
+	 * @see #number(int)
+	 */
+	public long minorUnits(int i) {
+		return PriceScanner.minorUnits(text(i));
+	}
+
+	/**
+	 * @return the price in minor units (cents), or zero if the text wasn't numeric
+	 * @see #minorUnits(int)
+	 */
+	public long minorUnitsOrZero(int i) {
+		long minorUnits = minorUnits(i);
+		return minorUnits == PriceScanner.NONE ? 0 : minorUnits;
 	}
 
 	/**
@@ -548,7 +737,7 @@ public class Filter implements Iterable<Filter> {
 	 * @return the number with scale of 2 and {@link RoundingMode#HALF_UP} or zero if the extracted text wasn't numeric
 	 */
 	public BigDecimal numberOrZero(int i) {
-		BigDecimal number = PricingHelper.extractNumber(text(i));
+		BigDecimal number = number(i);
 		return number == null ? BigDecimal.ZERO : number;
 	}
 
@@ -568,8 +757,8 @@ public class Filter implements Iterable<Filter> {
 	 * @return the number with scale of 2 and {@link RoundingMode#HALF_UP}
 	 */
 	public BigDecimal numberCleaned(int i, String regex) {
-		String text = text(i).replaceAll(regex, "");
-		return PricingHelper.extractNumber(text);
+		String text = pattern(regex).matcher(text(i)).replaceAll("");
+		return PriceScanner.number(text);
 	}
 
 	/**
@@ -579,8 +768,8 @@ public class Filter implements Iterable<Filter> {
 	 * @return the number with scale of 2 and {@link RoundingMode#HALF_UP} or zero if the num was null
 	 */
 	public BigDecimal numberCleanedOrZero(int i, String regex) {
-		String text = text(i).replaceAll(regex, "");
-		BigDecimal number = PricingHelper.extractNumber(text);
+		String text = pattern(regex).matcher(text(i)).replaceAll("");
+		BigDecimal number = PriceScanner.number(text);
 		return number == null ? BigDecimal.ZERO : number;
 	}
 
@@ -591,7 +780,7 @@ public class Filter implements Iterable<Filter> {
 	 * @return the int value of the number with scale of 2 and {@link RoundingMode#HALF_UP} or zero if the extracted text wasn't numeric
 	 */
 	public int intOrZero(int i) {
-		BigDecimal number = PricingHelper.extractNumber(text(i));
+		BigDecimal number = number(i);
 		return number == null ? 0 : number.intValue();
 	}
 
@@ -602,10 +791,22 @@ public class Filter implements Iterable<Filter> {
 	 * @return the number with scale of 2 and {@link RoundingMode#HALF_UP} or zero if the extracted text wasn't numeric
 	 */
 	public Integer integer(int i) {
-		BigDecimal number = PricingHelper.extractNumber(text(i));
+		BigDecimal number = number(i);
 		return number == null ? null : number.intValue();
 	}
 
+	/**
+	 * The regexes of {@link #numberCleaned} are compiled once
+	 */
+	private static Pattern pattern(String regex) {
+		Pattern pattern = PATTERNS.get(regex);
+		if (pattern == null) {
+			pattern = Pattern.compile(regex);
+			PATTERNS.put(regex, pattern);
+		}
+		return pattern;
+	}
+
 	// #script
 
 	public Script script() {
@@ -613,21 +814,40 @@ public class Filter implements Iterable<Filter> {
 	}
 
 	public Script script(int i) {
-		if (size() <= i) return Script.EMPTY;
-		String script = requireNonNull(filter).get(i).getContent(HtmlPrintFlags.Default);
+		IHtmlElement e = element(i);
+		if (e == null) return Script.EMPTY;
+		String script = doc == null ? e.getContent(HtmlPrintFlags.Default) : doc.texts().content(e);
+		return script.isEmpty() ? Script.EMPTY : new Script(script);
+	}
+
+	/**
+	 * Same as {@link #script()}, but the content is not added to the memo of the document, see {@link #scanText(boolean)}
+	 */
+	Script scanScript() {
+		IHtmlElement e = element(0);
+		if (e == null) return Script.EMPTY;
+		String script = doc == null ? e.getContent(HtmlPrintFlags.Default) : doc.texts().peekContent(e);
 		return script.isEmpty() ? Script.EMPTY : new Script(script);
 	}
 
 	// #children
 
+	/**
+	 * @return a copy of the child elements of the first element of this filter, as filters
+	 * @see #childView()
+	 */
 	public List<Filter> children() {
-		List<Filter> children = new ArrayList<>();
-
-		if (isNotEmpty() && requireNonNull(filter).get(0).getHasChildElements())
-			for (IHtmlElement f : filter.get(0).getChildElements())
-				children.add(Filter.fromElement(f));
+		return new ArrayList<>(childView());
+	}
 
-		return children;
+	/**
+	 * Same as {@link #children()}, but nothing is copied, the children are wrapped into filters only when they are read
+	 *
+	 * @return a read only view of the child elements of the first element of this filter
+	 */
+	public List<Filter> childView() {
+		IHtmlElement e = element(0);
+		return e == null ? Collections.<Filter>emptyList() : new ChildView(this, e);
 	}
 
 	// #extra
@@ -636,6 +856,7 @@ public class Filter implements Iterable<Filter> {
 	 * @return number of top level elements of this filter
 	 */
 	public int size() {
+		if (single != null) return 1;
 		return isEmpty() ? 0 : requireNonNull(filter).getCount();
 	}
 
@@ -643,14 +864,15 @@ public class Filter implements Iterable<Filter> {
 	 * @return the underlying url tied to this filter
 	 */
 	public String url() {
-		return isNotEmpty() ? requireNonNull(filter).get(0).getUri().toString() : "";
+		IHtmlElement e = element(0);
+		return e != null ? e.getUri().toString() : "";
 	}
 
 	/**
 	 * @return true if there are NO elements in this filter
 	 */
 	public boolean isEmpty() {
-		return innerEmpty || requireNonNull(filter).getIsEmpty();
+		return innerEmpty || (single == null && requireNonNull(filter).getIsEmpty());
 	}
 
 	/**
@@ -668,20 +890,25 @@ public class Filter implements Iterable<Filter> {
 	 * or if both key and value are in the same tag: </p>
 	 * {@code document.filter("***.tr").groupBy(Grouper.text("***.td", 0), Grouper.text("***.td", 1));}
 	 *
+	 * The paths of both groupers are matched in a single walk over each row.
+	 *
 	 * @param key the {@link Grouper} that will be used for generating the keys of the map
 	 * @param val the {@link Grouper} that will be used for generating the values of the map
 	 * @see Grouper
+	 * @see TableExtractor
 	 */
 	public <K, V> Map<K, V> groupBy(Grouper<K> key, Grouper<V> val) {
-		Map<K, V> map = new HashMap<>();
-
-		for (Filter row : this) {
-			K k = key.extract(row);
-			V v = val.extract(row);
+		return new TableExtractor(key, val).extract(this).<K, V>toMap(0, 1);
+	}
 
-			map.put(k, v);
-		}
-		return map;
+	/**
+	 * Same as {@link #groupBy(Grouper, Grouper)}, but large filters are split into chunks of rows, that are grouped
+	 * on the executor. The map is filled in the order of the rows, so it is the same as the sequential one.
+	 *
+	 * @see TableExtractor#extract(Filter, ExecutorService)
+	 */
+	public <K, V> Map<K, V> groupByParallel(Grouper<K> key, Grouper<V> val, ExecutorService executor) {
+		return new TableExtractor(key, val).extract(this, executor).<K, V>toMap(0, 1);
 	}
 
 	/**
@@ -694,8 +921,9 @@ public class Filter implements Iterable<Filter> {
 	 */
 	public <K, V> Map<K, V> mergeBy(Merger<K> key, Merger<V> val) {
 		Map<K, V> map = new HashMap<>();
-		List<K> k = key.extract(this);
-		List<V> v = val.extract(this);
+		Filter[] filtered = filterEach(key.path(), val.path());
+		List<K> k = key.extract(this, filtered[0]);
+		List<V> v = val.extract(this, filtered[1]);
 
 		if (k.size() == v.size())
 			for (int i = 0; i < k.size(); i++)
@@ -714,8 +942,9 @@ public class Filter implements Iterable<Filter> {
 	 */
 	public <K, V> List<Pair<K, V>> pairBy(Merger<K> key, Merger<V> val) {
 		List<Pair<K, V>> pairs = new ArrayList<>();
-		List<K> k = key.extract(this);
-		List<V> v = val.extract(this);
+		Filter[] filtered = filterEach(key.path(), val.path());
+		List<K> k = key.extract(this, filtered[0]);
+		List<V> v = val.extract(this, filtered[1]);
 
 		if (k.size() == v.size())
 			for (int i = 0; i < k.size(); i++)
@@ -729,15 +958,16 @@ public class Filter implements Iterable<Filter> {
 	 * @see #groupBy(Grouper, Grouper)
 	 */
 	public <K, V> List<Pair<K, V>> pairBy(Grouper<K> key, Grouper<V> val) {
-		List<Pair<K, V>> pairs = new ArrayList<>();
-
-		for (Filter row : this) {
-			K k = key.extract(row);
-			V v = val.extract(row);
+		return new TableExtractor(key, val).extract(this).<K, V>toPairs(0, 1);
+	}
 
-			pairs.add(Pair.of(k, v));
-		}
-		return pairs;
+	/**
+	 * Same as {@link #pairBy(Grouper, Grouper)}, with the rows paired on the executor, in the same order
+	 *
+	 * @see TableExtractor#extract(Filter, ExecutorService)
+	 */
+	public <K, V> List<Pair<K, V>> pairByParallel(Grouper<K> key, Grouper<V> val, ExecutorService executor) {
+		return new TableExtractor(key, val).extract(this, executor).<K, V>toPairs(0, 1);
 	}
 
 	/**
@@ -745,11 +975,122 @@ public class Filter implements Iterable<Filter> {
 	 */
 	@Override
 	public Iterator<Filter> iterator() {
-		List<Filter> l = new ArrayList<>();
-		if (isNotEmpty())
-			for (IHtmlElement element : requireNonNull(filter))
-				l.add(Filter.fromElement(element));
-		return l.iterator();
+		return new Iterator<Filter>() {
+			private final int size = size();
+			private int i;
+
+			@Override
+			public boolean hasNext() {
+				return i < size;
+			}
+
+			@Override
+			public Filter next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return wrap(element(i++));
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Filter is read only");
+			}
+		};
+	}
+
+	/**
+	 * Splits this filter's top level elements by index, see {@link #parallelStream()}
+	 */
+	@Override
+	public Spliterator<Filter> spliterator() {
+		return new FilterSpliterator(this);
+	}
+
+	/**
+	 * @return a sequential stream of this filter's top level elements, in document order
+	 */
+	public Stream<Filter> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * A parallel stream of this filter's top level elements, for heavy work per element, like building offers
+	 * from product containers:
+	 * <pre>
+	 * List&lt;Offer&gt; offers = products.parallelStream().map(toOffer).collect(Collectors.toList());
+	 * </pre>
+	 * The encounter order is the document order, so ordered collectors return the same result as {@link #stream()}.
+	 * Only safe if the parser of the document allows concurrent reads, see {@link TableExtractor#extract(Filter, ExecutorService)}.
+	 */
+	public Stream<Filter> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * Gives access to the element at the specified index without wrapping it into a filter.
+	 * Useful for loops that only need the text or attributes of the elements.
+	 *
+	 * @return the element at the specified index or null if there is no such element
+	 */
+	public IHtmlElement element(int i) {
+		if (single != null) return i == 0 ? single : null;
+		return i >= 0 && size() > i ? requireNonNull(filter).get(i) : null;
+	}
+
+	/**
+	 * @return a read only view of the top level elements of this filter, nothing is copied
+	 * @see #element(int)
+	 */
+	public List<IHtmlElement> elements() {
+		return new AbstractList<IHtmlElement>() {
+			@Override
+			public IHtmlElement get(int i) {
+				IHtmlElement e = element(i);
+				if (e == null) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+				return e;
+			}
+
+			@Override
+			public int size() {
+				return Filter.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Enables the {@link ElementIndex} of the document this filter belongs to. The index is built on first use.
+	 * Only has effect for filters created by {@link #fromResponse} or {@link #fromString} and the ones derived from them.
+	 * <pre>
+	 * document = Filter.fromResponse(this).indexed();
+	 * </pre>
+	 *
+	 * @return this filter
+	 */
+	public Filter indexed() {
+		if (doc != null) doc.enableIndex();
+		return this;
+	}
+
+	/**
+	 * Builds the index if it has not been built yet, so that its size can be logged
+	 *
+	 * @return the index of the document this filter belongs to, or null if {@link #indexed()} was not called
+	 */
+	public ElementIndex index() {
+		return doc == null ? null : doc.index();
+	}
+
+	/**
+	 * @return the index of the document, if this filter is the whole document and the index is enabled
+	 */
+	ElementIndex rootIndex() {
+		return doc != null && doc.isRoot(filter) ? doc.index() : null;
+	}
+
+	/**
+	 * Creates a filter of a single element, that belongs to the same document as this one
+	 */
+	Filter wrap(IHtmlElement e) {
+		return new Filter(e, doc);
 	}
 
 	/**
@@ -758,17 +1099,40 @@ public class Filter implements Iterable<Filter> {
 	 * @return the core of the class - {@link IHtmlElementFilter}
 	 */
 	public IHtmlElementFilter iHtmlFilter() {
-		return filter;
+		return elementFilter();
 	}
 
+	/**
+	 * Creates the filter of a {@link #single} element on first use. Two threads may both create one, which is harmless.
+	 */
+	private IHtmlElementFilter elementFilter() {
+		IHtmlElementFilter f = filter;
+		if (f == null && single != null) filter = f = new HtmlElementFilter(single);
+		return f;
+	}
+
+	/**
+	 * Concatenates the elements of the filters in their order, keeping only the first occurrence of each element.
+	 * Elements are compared by identity, so an element that several filters found, like the scans of an element
+	 * and of its ancestor do, is kept once, while an element and its ancestors or descendants are all kept.
+	 * A single filter is returned as is.
+	 */
 	private Filter mergeAllToOne(List<Filter> filters) {
-		List<IHtmlElement> elements = new ArrayList<>();
+		if (filters.isEmpty()) return EMPTY;
+		if (filters.size() == 1) return filters.get(0);
 
+		int total = 0;
+		for (Filter f : filters) total += f.size();
+
+		IHtmlElement[] elements = new IHtmlElement[total];
+		Set<IHtmlElement> seen = Collections.newSetFromMap(new IdentityHashMap<IHtmlElement, Boolean>(total));
+		int size = 0;
 		for (Filter f : filters)
-			if (f.isNotEmpty())
-				for (IHtmlElement element : requireNonNull(f.filter))
-					elements.add(element);
+			for (int i = 0; i < f.size(); i++) {
+				IHtmlElement e = f.element(i);
+				if (seen.add(e)) elements[size++] = e;
+			}
 
-		return Filter.fromFilter(new HtmlElementFilter(elements.toArray(new IHtmlElement[0])));
+		return new Filter(new HtmlElementFilter(size == total ? elements : Arrays.copyOf(elements, size)), doc);
 	}
 }
@@ -8,8 +8,6 @@ import org.apache.commons.lang3.StringUtils;
 import java.util.ArrayList;
 import java.util.List;
 
-import static java.util.Objects.requireNonNull;
-
 class FilterPath {
 
 	private final Condition condition;
@@ -23,66 +21,77 @@ class FilterPath {
 		this.filter = filter;
 	}
 
+	/**
+	 * Walks the elements with an explicit stack, the state of each element is the length of the path of its parent,
+	 * so that a single builder holds the path of the visited element
+	 */
 	FilterPath find() {
 		StringBuilder path = new StringBuilder();
-
-		for (Filter f : filter)
-			deepFind(f, path);
-
+		ElementStack stack = new ElementStack();
+		for (int i = filter.size() - 1; i >= 0; i--)
+			stack.push(filter.element(i), 0L);
+
+		Condition.Probe probe = new Condition.Probe();
+		while (!stack.isEmpty()) {
+			path.setLength((int) stack.peekState());
+			IHtmlElement e = stack.pop();
+			appendElement(e, path);
+
+			if (condition.test(probe.of(filter.wrap(e))))
+				paths.add(path.toString());
+			stack.pushChildren(e, path.length());
+		}
 		return this;
 	}
 
-	private void deepFind(Filter filter, StringBuilder path) {
-		StringBuilder copy = new StringBuilder(path);
-		addFilterToPath(filter, copy);
-
-		if (filter.matches(condition))
-			paths.add(copy.toString());
-		if (filter.size() > 1)
-			for (Filter f : filter)
-				deepFind(f, copy);
-		else if (filter.isNotEmpty() && requireNonNull(filter).iHtmlFilter().get(0).getHasChildElements())
-			for (IHtmlElement f : filter.iHtmlFilter().get(0).getChildElements())
-				deepFind(Filter.fromElement(f), copy);
+	/**
+	 * Builds the path the same way {@link #find()} does, from the chain of elements leading to the target
+	 *
+	 * @param chain the elements from the top level element of the scanned filter down to the target, inclusive
+	 */
+	static String pathOf(List<IHtmlElement> chain) {
+		StringBuilder path = new StringBuilder();
+		for (IHtmlElement element : chain)
+			appendElement(element, path);
+		return path.toString();
 	}
 
 //	TODO rewrite using Filter#allAttributesPaired()
-	private void addFilterToPath(Filter filter, StringBuilder copy) {
-		if (filter.isNotEmpty()) {
-			IHtmlElement element = filter.iHtmlFilter().get(0);
-
-			if (element == null || element.getAttributes() == null) return;
+	private static void appendElement(IHtmlElement element, StringBuilder copy) {
+		if (element == null || element.getAttributes() == null) return;
 
-			IHtmlNode.IHtmlNodeAttributeCollection attributes = element.getAttributes();
+		IHtmlNode.IHtmlNodeAttributeCollection attributes = element.getAttributes();
 
-			if (attributes.getKeys().length == 0) {
-				if (copy.length() == 0)
-					copy.append("***");
-				else
-					copy.append(".").append(element.getTagName());
-				return;
-			}
-
-			Key[] keys = attributes.getKeys();
-			Object[] values = attributes.getValues();
-
-			if (keys.length == values.length)
-				appendTags(copy, element, keys, values);
+		if (attributes.getKeys().length == 0) {
+			if (copy.length() == 0)
+				copy.append("***");
 			else
-				copy.append(".***");
+				copy.append(".").append(element.getTagName());
+			return;
 		}
+
+		Key[] keys = attributes.getKeys();
+		Object[] values = attributes.getValues();
+
+		if (keys.length == values.length)
+			appendTags(copy, element, keys, values);
+		else
+			copy.append(".***");
 	}
 
-	private void appendTags(StringBuilder copy, IHtmlElement element, Key[] keys, Object[] values) {
+	private static void appendTags(StringBuilder copy, IHtmlElement element, Key[] keys, Object[] values) {
 		copy.append(".").append(element.getTagName()).append("[");
 
 		for (int i = 0; i < keys.length; i++) {
 			String key = String.valueOf(keys[i]);
 			String val = String.valueOf(values[i]);
 
-			String tag = StringUtils.isEmpty(val) ? String.format("%s:* ", key) : String.format("%s:'%s' ", key, val);
+			if (StringUtils.isEmpty(val))
+				copy.append(key).append(":* ");
+			else
+				copy.append(key).append(":'").append(val).append("' ");
 
-			copy.append(tag).append("& ");
+			copy.append("& ");
 			if (i == 4) break;
 		}
 		copy.setLength(copy.length() - 3);
@@ -0,0 +1,66 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits the top level elements of a {@link Filter} by index, so that {@link Filter#parallelStream()} hands
+ * balanced halves to the threads of the pool. The filter is read only, so its size is known up front and every half
+ * knows its exact size as well.
+ * <p>
+ * Each element is wrapped into a filter of its own only when it is consumed.
+ *
+ * @author dpozinen
+ */
+final class FilterSpliterator implements Spliterator<Filter> {
+
+	private final Filter filter;
+	private int index;
+	private final int fence;
+
+	FilterSpliterator(Filter filter) {
+		this(filter, 0, filter.size());
+	}
+
+	private FilterSpliterator(Filter filter, int origin, int fence) {
+		this.filter = filter;
+		this.index = origin;
+		this.fence = fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Filter> action) {
+		if (action == null) throw new NullPointerException();
+		if (index >= fence) return false;
+		action.accept(filter.wrap(filter.element(index++)));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Filter> action) {
+		if (action == null) throw new NullPointerException();
+		for (int i = index; i < fence; i++)
+			action.accept(filter.wrap(filter.element(i)));
+		index = fence;
+	}
+
+	@Override
+	public Spliterator<Filter> trySplit() {
+		int mid = (index + fence) >>> 1;
+		if (mid <= index) return null;
+
+		Spliterator<Filter> prefix = new FilterSpliterator(filter, index, mid);
+		index = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return fence - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+	}
+}
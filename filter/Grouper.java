@@ -33,6 +33,20 @@ public abstract class Grouper<T> {
 
 	public abstract T extract(Filter f);
 
+	/**
+	 * @param filtered the row already filtered by {@link #path()}, null if there is no path
+	 */
+	T extract(Filter row, Filter filtered) {
+		return extract(row);
+	}
+
+	/**
+	 * @return the path the row is filtered by before extracting, null if the grouper does not filter the row
+	 */
+	String path() {
+		return null;
+	}
+
 	public static Grouper<String> text() {
 		return new Grouper<String>() {
 			@Override
@@ -52,10 +66,10 @@ public abstract class Grouper<T> {
 	}
 
 	public static Grouper<String> text(final String path) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).text();
+			String extractFiltered(Filter f) {
+				return f.text();
 			}
 		};
 	}
@@ -70,55 +84,55 @@ public abstract class Grouper<T> {
 	}
 
 	public static Grouper<String> text(final String path, final int i) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).text(i);
+			String extractFiltered(Filter f) {
+				return f.text(i);
 			}
 		};
 	}
 
 	public static Grouper<String> text(final String path, final int i, final boolean includeChild) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).text(i, includeChild);
+			String extractFiltered(Filter f) {
+				return f.text(i, includeChild);
 			}
 		};
 	}
 
 	public static Grouper<String> text(final String path, final Condition condition) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).first(condition).text();
+			String extractFiltered(Filter f) {
+				return f.first(condition).text();
 			}
 		};
 	}
 
 	public static Grouper<String> text(final String path, final Condition condition, final String path2) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).first(condition).filter(path2).text();
+			String extractFiltered(Filter f) {
+				return f.first(condition).filter(path2).text();
 			}
 		};
 	}
 
 	public static Grouper<String> textNormalized(final String path) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).textNormalized();
+			String extractFiltered(Filter f) {
+				return f.textNormalized();
 			}
 		};
 	}
 
 	public static Grouper<String> textNormalized(final String path, final int i) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).textNormalized(i);
+			String extractFiltered(Filter f) {
+				return f.textNormalized(i);
 			}
 		};
 	}
@@ -133,10 +147,10 @@ public abstract class Grouper<T> {
 	}
 
 	public static Grouper<BigDecimal> number(final String path) {
-		return new Grouper<BigDecimal>() {
+		return new PathGrouper<BigDecimal>(path) {
 			@Override
-			public BigDecimal extract(Filter f) {
-				return f.filter(path).number();
+			BigDecimal extractFiltered(Filter f) {
+				return f.number();
 			}
 		};
 	}
@@ -151,19 +165,19 @@ public abstract class Grouper<T> {
 	}
 
 	public static Grouper<String> attribute(final String path, final String name) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).attribute(name);
+			String extractFiltered(Filter f) {
+				return f.attribute(name);
 			}
 		};
 	}
 
 	public static Grouper<String> attribute(final String path, final String name, final int i) {
-		return new Grouper<String>() {
+		return new PathGrouper<String>(path) {
 			@Override
-			public String extract(Filter f) {
-				return f.filter(path).attribute(name, i);
+			String extractFiltered(Filter f) {
+				return f.attribute(name, i);
 			}
 		};
 	}
@@ -1,5 +1,7 @@
 package blackbee.swarm.parsinghelper.filter;
 
+import blackbee.swarm.parsinghelper.PriceScanner;
+
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,57 +37,126 @@ public abstract class Merger<T> {
 
 	public abstract List<T> extract(Filter f);
 
+	/**
+	 * @param filtered the container already filtered by {@link #path()}, null if there is no path
+	 */
+	List<T> extract(Filter container, Filter filtered) {
+		return extract(container);
+	}
+
+	/**
+	 * @return the path the container is filtered by before extracting, null if the merger does not filter it
+	 */
+	String path() {
+		return null;
+	}
+
 	public static Merger<String> text(final String path) {
-		return new Merger<String>() {
-			@Override public List<String> extract(Filter f) {
-				return f.filter(path).allText(false);
+		return new PathMerger<String>(path) {
+			@Override List<String> extractFiltered(Filter f) {
+				return f.allText(false);
 			}
 		};
 	}
 
 	public static Merger<String> textWithChildren(final String path) {
-		return new Merger<String>() {
-			@Override public List<String> extract(Filter f) {
-				return f.filter(path).allText(true);
+		return new PathMerger<String>(path) {
+			@Override List<String> extractFiltered(Filter f) {
+				return f.allText(true);
 			}
 		};
 	}
 
 	public static Merger<String> attributes(final String path, final String name) {
-		return new Merger<String>() {
-			@Override public List<String> extract(Filter f) {
-				return f.filter(path).allAttributes(name);
+		return new PathMerger<String>(path) {
+			@Override List<String> extractFiltered(Filter f) {
+				return f.allAttributes(name);
 			}
 		};
 	}
 
 	public static Merger<BigDecimal> numbers(final String path) {
-		return new Merger<BigDecimal>() {
-			@Override public List<BigDecimal> extract(Filter f) {
+		return new PathMerger<BigDecimal>(path) {
+			@Override List<BigDecimal> extractFiltered(Filter f) {
 				List<BigDecimal> numbers = new ArrayList<>();
-				for (Filter filter : f.filter(path)) numbers.add(filter.number());
+				for (Filter filter : f) numbers.add(filter.number());
 				return numbers;
 			}
 		};
 	}
 
+	/**
+	 * Same as {@link #numbers(String)}, but {@link MinorUnits#extractPrimitive} returns the prices as a {@code long[]} of cents
+	 */
+	public static MinorUnits minorUnits(final String path) {
+		return new MinorUnits(path);
+	}
+
 	public static Merger<BigDecimal> attributesAsNumbers(final String path, final String name) {
-		return new Merger<BigDecimal>() {
-			@Override public List<BigDecimal> extract(Filter f) {
+		return new PathMerger<BigDecimal>(path) {
+			@Override List<BigDecimal> extractFiltered(Filter f) {
 				List<BigDecimal> numbers = new ArrayList<>();
-				for (Filter filter : f.filter(path)) numbers.add(filter.attributeAsNumber(name, 0));
+				for (Filter filter : f) numbers.add(filter.attributeAsNumber(name, 0));
 				return numbers;
 			}
 		};
 	}
 
 	public static Merger<Filter> filters(final String path) {
-		return new Merger<Filter>() {
-			@Override public List<Filter> extract(Filter f) {
+		return new PathMerger<Filter>(path) {
+			@Override List<Filter> extractFiltered(Filter f) {
 				List<Filter> filters = new ArrayList<>();
-				for (Filter filter : f.filter(path)) filters.add(filter);
+				for (Filter filter : f) filters.add(filter);
 				return filters;
 			}
 		};
 	}
+
+	/**
+	 * Extracts prices in minor units (cents), see {@link Filter#minorUnits(int)}
+	 */
+	public static final class MinorUnits extends Merger<Long> {
+		private final String path;
+
+		private MinorUnits(String path) {
+			this.path = path;
+		}
+
+		/**
+		 * @return the price of every element found by the path, {@link PriceScanner#NONE} for the elements without one
+		 */
+		public long[] extractPrimitive(Filter f) {
+			return extractFiltered(f.filter(path));
+		}
+
+		private static long[] extractFiltered(Filter filtered) {
+			long[] prices = new long[filtered.size()];
+			for (int i = 0; i < prices.length; i++) prices[i] = filtered.minorUnits(i);
+			return prices;
+		}
+
+		/**
+		 * @return the prices, null for the elements without one
+		 */
+		@Override
+		public List<Long> extract(Filter f) {
+			return boxed(extractPrimitive(f));
+		}
+
+		@Override
+		List<Long> extract(Filter container, Filter filtered) {
+			return filtered == null ? extract(container) : boxed(extractFiltered(filtered));
+		}
+
+		@Override
+		String path() {
+			return path;
+		}
+
+		private static List<Long> boxed(long[] prices) {
+			List<Long> list = new ArrayList<>(prices.length);
+			for (long price : prices) list.add(price == PriceScanner.NONE ? null : price);
+			return list;
+		}
+	}
 }
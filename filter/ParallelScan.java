@@ -0,0 +1,186 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An opt-in parallel mode for the deep scans of {@link Filter}, meant for documents with a huge DOM.
+ * <pre>
+ * ParallelScan parallel = ParallelScan.withThreshold(20000);
+ * document.filter(Condition.textContains("499.00", false), parallel);
+ * </pre>
+ * The elements are laid out in document order once, then tested against the {@link Condition} in batches on a
+ * {@link ForkJoinPool}, so results come back in the same order as the sequential scan.
+ * If the filter has fewer elements than the threshold, the sequential scan is used instead, since
+ * forking does not pay off for small documents.
+ * <p>
+ * Conditions are tested concurrently, so custom ones must not keep any state between calls. The elements are read
+ * concurrently as well, which the html parser does not promise to support, see {@link TableExtractor#extract(Filter, java.util.concurrent.ExecutorService)}.
+ *
+ * @author dpozinen
+ */
+public final class ParallelScan {
+
+	public static final int DEFAULT_THRESHOLD = 10000;
+	/**
+	 * The number of elements a single task tests before it stops forking
+	 */
+	private static final int BATCH = 512;
+	private static final ForkJoinPool SHARED_POOL = new ForkJoinPool();
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+
+	/**
+	 * @param pool      the pool the scan is going to be run on
+	 * @param threshold the minimal number of elements for the scan to be run in parallel
+	 */
+	public ParallelScan(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return a scan with {@link #DEFAULT_THRESHOLD} on a pool shared by all parsers
+	 */
+	public static ParallelScan defaults() {
+		return withThreshold(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @return a scan with the specified threshold on a pool shared by all parsers
+	 */
+	public static ParallelScan withThreshold(int threshold) {
+		return new ParallelScan(SHARED_POOL, threshold);
+	}
+
+	/**
+	 * @see Filter#findAll(Condition, int)
+	 */
+	List<Filter> find(Filter from, Condition condition) {
+		if (isSmall(from)) return DeepScan.find(from, condition, Integer.MAX_VALUE);
+
+		Layout layout = new Layout(from);
+		boolean[] hits = test(from, layout, condition);
+
+		List<Filter> found = new ArrayList<>();
+		for (int i = 0; i < layout.size; i++)
+			if (hits[i]) found.add(from.wrap(layout.elements[i]));
+		return found;
+	}
+
+	/**
+	 * @see Filter#findPaths(Condition)
+	 */
+	List<String> findPaths(Filter from, Condition condition) {
+		if (isSmall(from)) return new FilterPath(condition, from).find().paths;
+
+		Layout layout = new Layout(from);
+		boolean[] hits = test(from, layout, condition);
+
+		List<String> paths = new ArrayList<>();
+		List<IHtmlElement> chain = new ArrayList<>();
+		for (int i = 0; i < layout.size; i++)
+			if (hits[i]) {
+				chain.clear();
+				for (int p = i; p >= 0; p = layout.parents[p])
+					chain.add(0, layout.elements[p]);
+				paths.add(FilterPath.pathOf(chain));
+			}
+		return paths;
+	}
+
+	private boolean[] test(Filter from, Layout layout, Condition condition) {
+		boolean[] hits = new boolean[layout.size];
+		pool.invoke(new Test(from, layout.elements, hits, condition, 0, layout.size));
+		return hits;
+	}
+
+	/**
+	 * Counts the elements only up to the threshold, so that small documents are not walked twice
+	 */
+	private boolean isSmall(Filter from) {
+		ElementStack stack = new ElementStack();
+		for (int i = from.size() - 1; i >= 0; i--)
+			stack.push(from.element(i), 0L);
+
+		int count = 0;
+		while (!stack.isEmpty()) {
+			if (++count >= threshold) return false;
+			stack.pushChildren(stack.pop(), 0L);
+		}
+		return true;
+	}
+
+	/**
+	 * All the elements of a filter in document order, with the index of the parent of each element,
+	 * -1 for the top level ones.
+	 */
+	private static final class Layout {
+		private IHtmlElement[] elements = new IHtmlElement[1024];
+		private int[] parents = new int[1024];
+		private int size;
+
+		private Layout(Filter from) {
+			ElementStack stack = new ElementStack();
+			for (int i = from.size() - 1; i >= 0; i--)
+				stack.push(from.element(i), -1L);
+
+			while (!stack.isEmpty()) {
+				int parent = (int) stack.peekState();
+				IHtmlElement e = stack.pop();
+				add(e, parent);
+				stack.pushChildren(e, size - 1);
+			}
+		}
+
+		private void add(IHtmlElement e, int parent) {
+			if (size == elements.length) {
+				IHtmlElement[] e2 = new IHtmlElement[size * 2];
+				int[] p2 = new int[size * 2];
+				System.arraycopy(elements, 0, e2, 0, size);
+				System.arraycopy(parents, 0, p2, 0, size);
+				elements = e2;
+				parents = p2;
+			}
+			elements[size] = e;
+			parents[size++] = parent;
+		}
+	}
+
+	private static final class Test extends RecursiveAction {
+		private static final long serialVersionUID = 2315712659462453177L;
+
+		private final Filter from;
+		private final IHtmlElement[] elements;
+		private final boolean[] hits;
+		private final Condition condition;
+		private final int start;
+		private final int end;
+
+		private Test(Filter from, IHtmlElement[] elements, boolean[] hits, Condition condition, int start, int end) {
+			this.from = from;
+			this.elements = elements;
+			this.hits = hits;
+			this.condition = condition;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= BATCH) {
+				Condition.Probe probe = new Condition.Probe();
+				for (int i = start; i < end; i++)
+					hits[i] = condition.test(probe.of(from.wrap(elements[i])));
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new Test(from, elements, hits, condition, start, mid), new Test(from, elements, hits, condition, mid, end));
+			}
+		}
+	}
+}
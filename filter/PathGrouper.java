@@ -0,0 +1,36 @@
+package blackbee.swarm.parsinghelper.filter;
+
+/**
+ * A {@link Grouper} that filters the row by a path and extracts from the result. Knowing the path lets
+ * {@link TableExtractor} filter every row by the paths of all its columns in a single walk.
+ *
+ * @author dpozinen
+ */
+abstract class PathGrouper<T> extends Grouper<T> {
+
+	private final String path;
+
+	PathGrouper(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @param filtered the row filtered by {@link #path()}
+	 */
+	abstract T extractFiltered(Filter filtered);
+
+	@Override
+	public T extract(Filter f) {
+		return extractFiltered(f.filter(path));
+	}
+
+	@Override
+	T extract(Filter row, Filter filtered) {
+		return filtered == null ? extract(row) : extractFiltered(filtered);
+	}
+
+	@Override
+	String path() {
+		return path;
+	}
+}
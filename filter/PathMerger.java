@@ -0,0 +1,38 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import java.util.List;
+
+/**
+ * A {@link Merger} that filters the container by a path and extracts from the result. Knowing the path lets
+ * {@link Filter#mergeBy(Merger, Merger)} filter by the paths of both mergers in a single walk.
+ *
+ * @author dpozinen
+ */
+abstract class PathMerger<T> extends Merger<T> {
+
+	private final String path;
+
+	PathMerger(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @param filtered the container filtered by {@link #path()}
+	 */
+	abstract List<T> extractFiltered(Filter filtered);
+
+	@Override
+	public List<T> extract(Filter f) {
+		return extractFiltered(f.filter(path));
+	}
+
+	@Override
+	List<T> extract(Filter container, Filter filtered) {
+		return filtered == null ? extract(container) : extractFiltered(filtered);
+	}
+
+	@Override
+	String path() {
+		return path;
+	}
+}
@@ -1,100 +1,177 @@
 package blackbee.swarm.parsinghelper.filter;
 
 import blackbee.swarm.parsinghelper.JsonUtils;
+import blackbee.swarm.parsinghelper.StreamingJsonExtractor;
 import blackbee.swarm.util.JsonPathWrapper;
 import com.jayway.jsonpath.internal.JsonContext;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
+ * An immutable view over the content of a script. Every call returns a new {@link Script} and never changes this one,
+ * so instances, {@link #EMPTY} included, can be shared between threads.
+ * <p>
+ * Cutting the script ({@link #scriptAfter}, {@link #scriptBefore}, {@link #scriptBetween} etc.) only moves the bounds
+ * of the view and copies nothing. Editing it ({@link #replace}, {@link #remove}, {@link #addStart} etc.) is recorded
+ * and applied once, when {@link #content()} or {@link #json()} is called. Consecutive replacements that can't affect
+ * each other are applied in a single pass. So a typical chain copies a multi-megabyte script once instead of once per call:
+ * <pre>
+ * document.firstScript(scriptContains("__INITIAL_STATE__")).scriptAfter("=").scriptBeforeLast(";").json();
+ * </pre>
+ *
  * @author dpozinen
  */
 public class Script {
 
-	private String content;
 	private static final JsonContext EMPTY_JSON = JsonPathWrapper.parse("{}");
 	static final Script EMPTY = new Script("");
 
+	/**
+	 * The text this view is over, never copied
+	 */
+	private final String source;
+	private final int start;
+	private final int end;
+	/**
+	 * The edits to apply to the view, in order
+	 */
+	private final List<Edit> edits;
+	/**
+	 * The result of applying the edits, set on first use
+	 */
+	private volatile String content;
+
 	Script(String content) {
-		this.content = StringUtils.defaultString(content);
+		this(StringUtils.defaultString(content), 0, StringUtils.length(content), Collections.<Edit>emptyList());
+	}
+
+	private Script(String source, int start, int end, List<Edit> edits) {
+		this.source = source;
+		this.start = start;
+		this.end = end;
+		this.edits = edits;
+		if (edits.isEmpty() && start == 0 && end == source.length()) this.content = source;
 	}
 
+	/**
+	 * If there are no edits to apply, the json is parsed right out of the view, without copying the script
+	 */
 	public JsonContext json() {
-		return content.isEmpty() ? EMPTY_JSON : JsonUtils.parse(content);
+		if (isEmpty()) return EMPTY_JSON;
+		return edits.isEmpty() ? JsonUtils.parse(source, start, end) : JsonUtils.parse(content());
 	}
 
+	/**
+	 * Parses only the node at the path, if the path is a definite one and the node is an object or an array.
+	 * Otherwise the whole script is parsed and the node is read from it.
+	 *
+	 * @see StreamingJsonExtractor
+	 */
 	public JsonContext subJson(String path) {
-		JsonContext json = json();
+		Script s = applied();
+		String node = StreamingJsonExtractor.extract(s.source, s.start, s.end, path);
+		if (node != null) return JsonUtils.parse(node);
+
+		JsonContext json = s.json();
 		if (JsonUtils.contextIsEmpty(json)) return json;
 		return JsonUtils.parse(json.read(path));
 	}
 
+	// #cuts
+
 	public Script scriptAfter(String after) {
-		this.content = StringUtils.defaultString(StringUtils.substringAfter(content, after));
-		return this;
+		Script s = applied();
+		if (s.start == s.end) return s;
+		if (after == null) return s.view(s.start, s.start);
+
+		int i = s.indexOf(after, s.start);
+		return i < 0 ? s.view(s.start, s.start) : s.view(i + after.length(), s.end);
 	}
 
 	public Script scriptBefore(String before) {
-		this.content = StringUtils.defaultString(StringUtils.substringBefore(content, before));
-		return this;
+		Script s = applied();
+		if (s.start == s.end || before == null) return s;
+		if (before.isEmpty()) return s.view(s.start, s.start);
+
+		int i = s.indexOf(before, s.start);
+		return i < 0 ? s : s.view(s.start, i);
 	}
 
 	public Script scriptBeforeLast(String before) {
-		this.content = StringUtils.defaultString(StringUtils.substringBeforeLast(content, before));
-		return this;
+		Script s = applied();
+		if (s.start == s.end || StringUtils.isEmpty(before)) return s;
+
+		int i = s.lastIndexOf(before);
+		return i < 0 ? s : s.view(s.start, i);
 	}
 
 	public Script scriptBetween(String open, String close) {
-		this.content = StringUtils.defaultString(StringUtils.substringBetween(content, open, close));
-		return this;
+		Script s = applied();
+		if (open == null || close == null) return s.view(s.start, s.start);
+
+		int i = s.indexOf(open, s.start);
+		if (i < 0) return s.view(s.start, s.start);
+		int j = s.indexOf(close, i + open.length());
+		return j < 0 ? s.view(s.start, s.start) : s.view(i + open.length(), j);
 	}
 
+	// #edits
+
 	public Script addStart(String add) {
-		this.content = add + content;
-		return this;
+		return edit(new Edit(Edit.ADD_START, add, null));
 	}
 
 	public Script addEnd(String add) {
-		this.content = content + add;
-		return this;
+		return edit(new Edit(Edit.ADD_END, add, null));
 	}
 
 	public Script unescapeJson() {
-		this.content = StringEscapeUtils.unescapeJson(content);
-		return this;
+		return edit(new Edit(Edit.UNESCAPE_JSON, null, null));
 	}
 
 	public Script replace(String target, String replacement) {
-		this.content = StringUtils.replace(content, target, replacement);
-		return this;
+		if (StringUtils.isEmpty(target) || replacement == null) return this;
+		return edit(new Edit(Edit.REPLACE, target, replacement));
 	}
 
 	public Script replacePattern(String regex, String replacement) {
-		this.content = StringUtils.replacePattern(this.content, regex, replacement);
-		return this;
+		return edit(new Edit(Edit.REPLACE_PATTERN, regex, replacement));
 	}
 
 	public Script remove(String target) {
-		this.content = StringUtils.remove(content, target);
-		return this;
+		return replace(target, "");
 	}
 
+	// #content
+
+	/**
+	 * Applies all recorded edits, only once per instance
+	 */
 	public String content() {
-		return content;
+		String c = content;
+		if (c == null) content = c = apply();
+		return c;
 	}
 
 	public boolean contains(String s) {
-		return content.contains(s);
+		if (!edits.isEmpty()) return content().contains(s);
+		return s.isEmpty() || indexOf(s, start) >= 0;
 	}
 
 	public boolean startsWith(String s) {
-		return content.startsWith(s);
+		if (!edits.isEmpty()) return content().startsWith(s);
+		return start + s.length() <= end && source.startsWith(s, start);
 	}
 
 	public boolean endsWith(String s) {
-		return content.endsWith(s);
+		if (!edits.isEmpty()) return content().endsWith(s);
+		return end - s.length() >= start && source.startsWith(s, end - s.length());
 	}
 
 	@Override
@@ -102,25 +179,185 @@ public class Script {
 		if (this == o) return true;
 		if (o == null) return false;
 		if (o.getClass().equals(String.class)) {
-			return Objects.equals(this.content, o);
+			return Objects.equals(content(), o);
 		} else {
 			Script script = (Script) o;
-			return Objects.equals(this.content, script.content);
+			return Objects.equals(content(), script.content());
 		}
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hashCode(content);
+		return Objects.hashCode(content());
 	}
 
 	public boolean isNotEmpty()
 	{
-		return !content.isEmpty();
+		return !isEmpty();
 	}
 
 	public boolean isEmpty()
 	{
-		return content.isEmpty();
+		return edits.isEmpty() ? start == end : content().isEmpty();
+	}
+
+	// #view
+
+	private Script view(int from, int to) {
+		return from == start && to == end ? this : new Script(source, from, to, edits);
+	}
+
+	private Script edit(Edit edit) {
+		List<Edit> e = new ArrayList<>(edits.size() + 1);
+		e.addAll(edits);
+		e.add(edit);
+		return new Script(source, start, end, Collections.unmodifiableList(e));
+	}
+
+	/**
+	 * Cuts have to see the edits made before them, so the edits are applied first, if there are any
+	 */
+	private Script applied() {
+		return edits.isEmpty() ? this : new Script(content());
+	}
+
+	/**
+	 * @return the index in {@link #source} of the first occurrence inside the view, or -1
+	 */
+	private int indexOf(String s, int from) {
+		int i = source.indexOf(s, from);
+		return i >= 0 && i + s.length() <= end ? i : -1;
+	}
+
+	private int lastIndexOf(String s) {
+		int i = source.lastIndexOf(s, end - s.length());
+		return i >= start ? i : -1;
+	}
+
+	/**
+	 * Text added to the start and end is only kept aside, and joined with the rest once the next edit needs it, or at the very end
+	 */
+	private String apply() {
+		String text = source;
+		int from = start, to = end;
+		StringBuilder prefix = new StringBuilder(), suffix = new StringBuilder();
+
+		for (int i = 0; i < edits.size(); i++) {
+			Edit edit = edits.get(i);
+			if (edit.type == Edit.ADD_START) {
+				prefix.insert(0, StringUtils.defaultString(edit.target, "null"));
+				continue;
+			} else if (edit.type == Edit.ADD_END) {
+				suffix.append(StringUtils.defaultString(edit.target, "null"));
+				continue;
+			}
+
+			if (prefix.length() > 0 || suffix.length() > 0) {
+				text = join(prefix, text, from, to, suffix);
+				from = 0;
+				to = text.length();
+				prefix.setLength(0);
+				suffix.setLength(0);
+			}
+
+			if (edit.type == Edit.REPLACE) {
+				int last = Edit.lastFusable(edits, i);
+				text = Edit.replaceAll(text, from, to, edits.subList(i, last + 1));
+				i = last;
+			} else if (edit.type == Edit.UNESCAPE_JSON) {
+				text = StringEscapeUtils.unescapeJson(text.substring(from, to));
+			} else {
+				text = StringUtils.replacePattern(text.substring(from, to), edit.target, edit.replacement);
+			}
+			from = 0;
+			to = text.length();
+		}
+		return join(prefix, text, from, to, suffix);
+	}
+
+	private static String join(StringBuilder prefix, String text, int from, int to, StringBuilder suffix) {
+		if (prefix.length() == 0 && suffix.length() == 0) return from == 0 && to == text.length() ? text : text.substring(from, to);
+		return new StringBuilder(prefix.length() + to - from + suffix.length())
+				.append(prefix).append(text, from, to).append(suffix).toString();
+	}
+
+	private static final class Edit {
+		private static final int ADD_START = 0;
+		private static final int ADD_END = 1;
+		private static final int REPLACE = 2;
+		private static final int REPLACE_PATTERN = 3;
+		private static final int UNESCAPE_JSON = 4;
+
+		private final int type;
+		private final String target;
+		private final String replacement;
+
+		private Edit(int type, String target, String replacement) {
+			this.type = type;
+			this.target = target;
+			this.replacement = replacement;
+		}
+
+		/**
+		 * Replacements can be applied in a single pass only if applying them one by one would give the same result.
+		 * That is guaranteed if no two targets share a char, so they can't overlap, and if every replacement but the
+		 * last is not empty and shares no char with the targets after it, so a later target can't be created
+		 * by an earlier replacement.
+		 *
+		 * @return the index of the last replacement, starting from {@code first}, that can be applied in the same pass
+		 */
+		private static int lastFusable(List<Edit> edits, int first) {
+			int last = first;
+			for (int j = first + 1; j < edits.size() && edits.get(j).type == REPLACE; j++) {
+				Edit next = edits.get(j);
+				for (int i = first; i < j; i++) {
+					Edit e = edits.get(i);
+					if (e.replacement.isEmpty() || shareChars(e.target, next.target) || shareChars(e.replacement, next.target))
+						return last;
+				}
+				last = j;
+			}
+			return last;
+		}
+
+		private static boolean shareChars(String a, String b) {
+			for (int i = 0; i < a.length(); i++)
+				if (b.indexOf(a.charAt(i)) >= 0) return true;
+			return false;
+		}
+
+		/**
+		 * A single left to right pass over the text, replacing every target with its replacement
+		 */
+		private static String replaceAll(String text, int from, int to, List<Edit> replacements) {
+			char[] firsts = new char[replacements.size()];
+			for (int k = 0; k < firsts.length; k++) firsts[k] = replacements.get(k).target.charAt(0);
+			char[] sorted = firsts.clone();
+			Arrays.sort(sorted);
+
+			StringBuilder sb = null;
+			int copied = from;
+			for (int i = from; i < to; ) {
+				Edit match = null;
+				if (Arrays.binarySearch(sorted, text.charAt(i)) >= 0)
+					for (int k = 0; k < firsts.length && match == null; k++) {
+						Edit e = replacements.get(k);
+						if (firsts[k] == text.charAt(i) && i + e.target.length() <= to && text.startsWith(e.target, i))
+							match = e;
+					}
+
+				if (match == null) {
+					i++;
+					continue;
+				}
+				if (sb == null) sb = new StringBuilder(to - from);
+				sb.append(text, copied, i).append(match.replacement);
+				i += match.target.length();
+				copied = i;
+			}
+
+			if (sb == null) return from == 0 && to == text.length() ? text : text.substring(from, to);
+			return sb.append(text, copied, to).toString();
+		}
 	}
 }
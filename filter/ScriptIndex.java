@@ -0,0 +1,126 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+import blackbee.swarm.core.parsing.html.IHtmlElementFilter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The scripts of a document, collected once, together with the answers to the {@link Condition#scriptContains} and
+ * {@link Condition#scriptStartsWith} lookups made by {@link Filter#firstScript(Condition)}.
+ * <p>
+ * The needles of {@link Condition#scriptContains} looked up on the documents of a parser are remembered for that
+ * parser (the class of the step the document was created by, see {@link Filter#fromResponse}). Since parsers look for
+ * the same needles on every page, after the first page all of them are known, and the first lookup on a document finds
+ * all of them with a single {@link AhoCorasick} pass over the scripts. The following lookups on the same document are
+ * then answered from memory. A needle that was not looked up before, or any needle of a document that was not created
+ * from a response, is looked up alone, stopping at the first script that contains it. Only the first
+ * {@link #MAX_NEEDLES} needles of a parser are remembered, the others are always looked up alone.
+ *
+ * @author dpozinen
+ */
+final class ScriptIndex {
+
+	static final int MAX_NEEDLES = 64;
+	private static final Selector SCRIPTS = Selector.compile("***.script");
+	private static final Map<Class<?>, Needles> BY_PARSER = new ConcurrentHashMap<>();
+
+	private final String[] contents;
+	/**
+	 * null if the document was not created by a parser
+	 */
+	private final Needles needles;
+	/**
+	 * needle to the index of the first script, -1 if there was none, guarded by this
+	 */
+	private final Map<String, Integer> containing = new HashMap<>();
+	private final Map<String, Integer> startingWith = new HashMap<>();
+
+	/**
+	 * @param parser the class of the step the document was created by, or null
+	 */
+	ScriptIndex(IHtmlElementFilter root, TextMemo texts, Class<?> parser) {
+		List<String> contents = new ArrayList<>();
+		for (IHtmlElement script : SCRIPTS.select(root))
+			contents.add(texts.content(script));
+		this.contents = contents.toArray(new String[0]);
+		this.needles = parser == null ? null : needles(parser);
+	}
+
+	private static Needles needles(Class<?> parser) {
+		Needles needles = BY_PARSER.get(parser);
+		if (needles == null) {
+			BY_PARSER.putIfAbsent(parser, new Needles());
+			needles = BY_PARSER.get(parser);
+		}
+		return needles;
+	}
+
+	/**
+	 * @return the first script that matches the condition, or {@link Script#EMPTY} if none did
+	 */
+	Script first(Condition.ScriptCondition condition) {
+		int i = condition.prefix ? firstStartingWith(condition.needle) : firstContaining(condition.needle);
+		return i < 0 || contents[i].isEmpty() ? Script.EMPTY : new Script(contents[i]);
+	}
+
+	private synchronized int firstContaining(String needle) {
+		Integer first = containing.get(needle);
+		if (first != null) return first;
+
+		AhoCorasick automaton = needles == null || needle.isEmpty() ? null : needles.automaton(needle);
+		if (automaton != null) {
+			int[] found = automaton.firstContaining(contents);
+			for (int k = 0; k < found.length; k++)
+				containing.put(automaton.needle(k), found[k]);
+			return containing.get(needle);
+		}
+
+		int found = -1;
+		for (int i = 0; i < contents.length && found < 0; i++)
+			if (contents[i].contains(needle)) found = i;
+		containing.put(needle, found);
+		return found;
+	}
+
+	private synchronized int firstStartingWith(String needle) {
+		Integer first = startingWith.get(needle);
+		if (first != null) return first;
+
+		int found = -1;
+		for (int i = 0; i < contents.length && found < 0; i++)
+			if (contents[i].startsWith(needle)) found = i;
+		startingWith.put(needle, found);
+		return found;
+	}
+
+	/**
+	 * The needles the documents of a parser were searched for, guarded by this
+	 */
+	private static final class Needles {
+		private final Set<String> needles = new LinkedHashSet<>();
+		private AhoCorasick automaton;
+
+		/**
+		 * Remembers the needle for the following documents of the parser
+		 *
+		 * @return an automaton of all the remembered needles, if there are several and the needle was remembered
+		 * before, otherwise null
+		 */
+		synchronized AhoCorasick automaton(String needle) {
+			if (!needles.contains(needle)) {
+				if (needles.size() < MAX_NEEDLES && needles.add(needle)) automaton = null;
+				return null;
+			}
+			if (needles.size() < 2) return null;
+			if (automaton == null) automaton = new AhoCorasick(needles);
+			return automaton;
+		}
+	}
+}
@@ -0,0 +1,562 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.HtmlElementFilter;
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+import blackbee.swarm.core.parsing.html.IHtmlElementFilter;
+import blackbee.swarm.core.parsing.html.IHtmlNode;
+import blackbee.swarm.parsinghelper.BoundedCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A path in jsoup format, that has been parsed once and can be run against the element tree directly,
+ * without handing the string to {@link IHtmlElementFilter#filterByDataPath} on every call.
+ * <p>
+ * Running paths directly is opt-in per path: only paths passed to {@link #compile(String)} are run this way,
+ * by {@link Filter#filter(Selector)} as well as by every {@link Filter} method taking the same path as a String.
+ * All other paths are filtered by the framework, as they always were:
+ * <pre>
+ * private static final Selector PRODUCTS = Selector.compile("***.div[class:'products']");
+ * </pre>
+ * <p>
+ * The supported syntax is what {@link FilterPath} produces and what the parsers use in practice:
+ * <pre>
+ * ***.div[class:'products'].a[href:* &amp; title:'Pixel']
+ * </pre>
+ * Steps are separated by dots, each step matches a tag name ({@code *} for any tag) of a child element and may require
+ * attributes to be present ({@code name:*}) or to be equal to a value ({@code name:'value'}).
+ * {@code ***} lets the following step match at any depth. Paths using anything else are not compiled, and
+ * are still filtered by {@link IHtmlElementFilter#filterByDataPath}.
+ * <p>
+ * Compiled paths only look at the descendants of the context elements, compare tag names ignoring case and attribute
+ * values exactly, so {@code class:'a'} does not match {@code class="a b"}. These are the rules of this class, they are not
+ * known to be the rules of the framework, so a path should only be compiled once {@link #verify(boolean)} has checked
+ * it against the framework on real pages.
+ * <p>
+ * Instances are immutable, compiled ones are cached by {@link #compile(String)}.
+ *
+ * @author dpozinen
+ */
+public final class Selector {
+
+	private static final String ANY_DEPTH = "***";
+	private static final String ANY_TAG = "*";
+	/**
+	 * Pending steps are tracked as bits of a long
+	 */
+	private static final int MAX_STEPS = 64;
+	private static final BoundedCache<String, Selector> CACHE = new BoundedCache<>(2048);
+
+	private static volatile boolean verify;
+
+	private final String path;
+	/**
+	 * null if the path could not be compiled
+	 */
+	private final Step[] steps;
+	/**
+	 * Set once {@link #verify(boolean)} found that this path finds other elements than the framework does
+	 */
+	private volatile boolean diverged;
+
+	private Selector(String path, Step[] steps) {
+		this.path = path;
+		this.steps = steps;
+	}
+
+	/**
+	 * Opts the path into being run directly. Paths with a syntax the parser does not fully understand
+	 * are still filtered by the framework.
+	 *
+	 * @param path a path in jsoup format
+	 * @return the compiled path, taken from the cache if it has been compiled before
+	 */
+	public static Selector compile(String path) {
+		if (path == null) return new Selector(null, null);
+
+		Selector selector = CACHE.get(path);
+		if (selector == null) {
+			selector = new Selector(path, new Parser(path).parse());
+			CACHE.put(path, selector);
+		}
+		return selector;
+	}
+
+	/**
+	 * @return the compiled path if it has been opted in with {@link #compile(String)}, otherwise a path that is
+	 * filtered by the framework
+	 */
+	static Selector of(String path) {
+		Selector selector = path == null ? null : CACHE.get(path);
+		return selector != null ? selector : new Selector(path, null);
+	}
+
+	/**
+	 * @return true if this path is run directly against the element tree, false if it is delegated to the framework
+	 */
+	public boolean isCompiled() {
+		return steps != null && !diverged;
+	}
+
+	/**
+	 * A debug mode for running parsers against recorded pages. While it is enabled, every compiled path is also filtered
+	 * by {@link IHtmlElementFilter#filterByDataPath}, and if the elements differ, the path is reported to
+	 * {@code System.err} and delegated to the framework from then on. The index of a document is not used,
+	 * so that every path is walked and checked.
+	 */
+	public static void verify(boolean enabled) {
+		verify = enabled;
+	}
+
+	/**
+	 * In the {@link #verify(boolean)} mode, filters the context both ways and marks this selector as diverged
+	 * if the elements differ
+	 *
+	 * @return the elements the framework found, or null if the mode is off or this path is not compiled
+	 */
+	private IHtmlElementFilter verified(IHtmlElementFilter filter) {
+		if (!verify || !isCompiled()) return null;
+
+		IHtmlElementFilter expected = filter.filterByDataPath(path);
+		List<IHtmlElement> found = selectEvery(filter);
+		if (!sameElements(expected, found)) {
+			diverged = true;
+			System.err.printf("%n%nSELECTOR %s FOUND %d ELEMENTS, THE FRAMEWORK FOUND %d, DELEGATING IT FROM NOW ON%n%n",
+							  path, found.size(), expected.getCount());
+		}
+		return expected;
+	}
+
+	private static boolean sameElements(IHtmlElementFilter expected, List<IHtmlElement> found) {
+		if (expected.getCount() != found.size()) return false;
+		for (int i = 0; i < found.size(); i++)
+			if (expected.get(i) != found.get(i)) return false;
+		return true;
+	}
+
+	public String path() {
+		return path;
+	}
+
+	IHtmlElementFilter select(IHtmlElementFilter filter) {
+		IHtmlElementFilter expected = verified(filter);
+		if (expected != null) return expected;
+		if (!isCompiled()) return filter.filterByDataPath(path);
+		return new HtmlElementFilter(selectEvery(filter).toArray(new IHtmlElement[0]));
+	}
+
+	/**
+	 * Selects from every context element. Context elements may contain each other, so an element found
+	 * from several of them is kept once, where it was found first.
+	 */
+	private List<IHtmlElement> selectEvery(IHtmlElementFilter filter) {
+		List<IHtmlElement> found = new ArrayList<>();
+		ElementStack stack = new ElementStack();
+		for (IHtmlElement context : filter)
+			select(context, stack, found);
+		if (filter.getCount() < 2) return found;
+
+		Set<IHtmlElement> seen = Collections.newSetFromMap(new IdentityHashMap<IHtmlElement, Boolean>());
+		List<IHtmlElement> unique = new ArrayList<>(found.size());
+		for (IHtmlElement e : found)
+			if (seen.add(e)) unique.add(e);
+		return unique;
+	}
+
+	/**
+	 * Same as {@link #select(IHtmlElementFilter)} for the filter of a single element, that does not have to be created
+	 * for compiled paths
+	 */
+	IHtmlElementFilter select(IHtmlElement context) {
+		if (verify || !isCompiled()) return select(new HtmlElementFilter(context));
+
+		List<IHtmlElement> found = new ArrayList<>();
+		select(context, new ElementStack(), found);
+		return new HtmlElementFilter(found.toArray(new IHtmlElement[0]));
+	}
+
+	/**
+	 * Walks the children of {@code context} in document order. The state of each element is the set of steps
+	 * that its children can still match; a step preceded by {@code ***} stays pending all the way down.
+	 */
+	private void select(IHtmlElement context, ElementStack stack, List<IHtmlElement> found) {
+		stack.pushChildren(context, 1L);
+		int last = steps.length - 1;
+
+		while (!stack.isEmpty()) {
+			long pending = stack.peekState();
+			IHtmlElement e = stack.pop();
+			long next = 0L;
+			boolean matched = false;
+
+			for (int i = 0; i <= last; i++) {
+				if ((pending & (1L << i)) == 0) continue;
+				Step step = steps[i];
+				if (step.anyDepth) next |= 1L << i;
+				if (step.matches(e)) {
+					if (i == last) matched = true;
+					else next |= 1L << (i + 1);
+				}
+			}
+
+			if (matched) found.add(e);
+			if (next != 0L) stack.pushChildren(e, next);
+		}
+	}
+
+	/**
+	 * Runs several selectors in a single walk, with their steps tracked as bits of the same long.
+	 * Every element is visited once per context element, no matter how many selectors there are.
+	 *
+	 * @param firstMatching if true, only the elements of the first selector that matches anything are kept,
+	 *                      and the other selectors stop being walked as soon as a preceding one matches.
+	 *                      Otherwise the elements of all selectors are kept
+	 * @return the elements in document order without duplicates, or null if some selector is not compiled
+	 * or the selectors have too many steps together
+	 */
+	static IHtmlElementFilter selectAll(IHtmlElementFilter filter, Selector[] selectors, boolean firstMatching) {
+		for (Selector selector : selectors) selector.verified(filter);
+		Union union = union(filter, selectors, firstMatching ? Union.FIRST : Union.ALL);
+		return union == null ? null : new HtmlElementFilter(union.found.toArray(new IHtmlElement[0]));
+	}
+
+	/**
+	 * @see #selectAll(IHtmlElementFilter, Selector[], boolean)
+	 */
+	static IHtmlElementFilter selectAll(IHtmlElement context, Selector[] selectors, boolean firstMatching) {
+		if (verify) return selectAll(new HtmlElementFilter(context), selectors, firstMatching);
+		Union union = union(Collections.singletonList(context), selectors, firstMatching ? Union.FIRST : Union.ALL);
+		return union == null ? null : new HtmlElementFilter(union.found.toArray(new IHtmlElement[0]));
+	}
+
+	/**
+	 * Same single walk as {@link #selectAll}, but the elements are kept apart by the selector that matched them,
+	 * exactly as if each selector was run on its own
+	 *
+	 * @return the elements of every selector in document order, or null if some selector is not compiled
+	 * or the selectors have too many steps together
+	 */
+	static List<IHtmlElement>[] selectEach(IHtmlElementFilter filter, Selector[] selectors) {
+		for (Selector selector : selectors) selector.verified(filter);
+		Union union = union(filter, selectors, Union.EACH);
+		return union == null ? null : union.each;
+	}
+
+	/**
+	 * @see #selectEach(IHtmlElementFilter, Selector[])
+	 */
+	static List<IHtmlElement>[] selectEach(IHtmlElement context, Selector[] selectors) {
+		if (verify) return selectEach(new HtmlElementFilter(context), selectors);
+		Union union = union(Collections.singletonList(context), selectors, Union.EACH);
+		return union == null ? null : union.each;
+	}
+
+	private static Union union(Iterable<IHtmlElement> contexts, Selector[] selectors, int mode) {
+		List<Step> all = new ArrayList<>();
+		List<Integer> owners = new ArrayList<>();
+		long starts = 0L, lasts = 0L;
+		for (int k = 0; k < selectors.length; k++) {
+			Step[] steps = selectors[k].steps;
+			if (!selectors[k].isCompiled() || all.size() + steps.length > MAX_STEPS) return null;
+
+			starts |= 1L << all.size();
+			for (Step step : steps) {
+				all.add(step);
+				owners.add(k);
+			}
+			lasts |= 1L << (all.size() - 1);
+		}
+
+		Union union = new Union(all.toArray(new Step[0]), owners, starts, lasts, selectors.length, mode);
+		ElementStack stack = new ElementStack();
+		for (IHtmlElement context : contexts)
+			union.select(context, stack);
+		return union;
+	}
+
+	/**
+	 * @return true if this is a single {@code ***.tag[...]} step, that can be answered by an {@link ElementIndex}
+	 */
+	boolean isIndexable() {
+		return !verify && isCompiled() && steps.length == 1 && steps[0].anyDepth && (steps[0].tag != null || steps[0].names.length > 0);
+	}
+
+	/**
+	 * Same as {@link #select(IHtmlElementFilter)} on the root of a document, but takes the smallest list of candidates
+	 * from the index of that document instead of walking it. Should only be called if {@link #isIndexable()}
+	 */
+	IHtmlElementFilter select(ElementIndex index) {
+		Step step = steps[0];
+		List<IHtmlElement> found = new ArrayList<>();
+		for (IHtmlElement e : step.candidates(index))
+			if (step.matches(e)) found.add(e);
+
+		return new HtmlElementFilter(found.toArray(new IHtmlElement[0]));
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(path);
+	}
+
+	/**
+	 * The state of a {@link #selectAll} or {@link #selectEach} walk
+	 */
+	private static final class Union {
+		private static final int ALL = 0;
+		private static final int FIRST = 1;
+		private static final int EACH = 2;
+
+		private final Step[] steps;
+		/**
+		 * the index of the selector each step belongs to
+		 */
+		private final int[] owners;
+		private final long starts;
+		private final long lasts;
+		/**
+		 * masks of the steps that belong to the selectors up to the index, inclusive
+		 */
+		private final long[] upTo;
+		private final int mode;
+
+		private final List<IHtmlElement> found = new ArrayList<>();
+		/**
+		 * the elements of each selector, only filled in the {@link #EACH} mode
+		 */
+		private final List<IHtmlElement>[] each;
+		private final Set<IHtmlElement> seen = Collections.newSetFromMap(new IdentityHashMap<IHtmlElement, Boolean>());
+		/**
+		 * the steps that are still walked, only shrinks in the {@link #FIRST} mode
+		 */
+		private long active;
+		/**
+		 * the index of the selector the found elements belong to, in the {@link #FIRST} mode
+		 */
+		private int best;
+
+		@SuppressWarnings("unchecked")
+		private Union(Step[] steps, List<Integer> owners, long starts, long lasts, int selectors, int mode) {
+			this.steps = steps;
+			this.owners = new int[steps.length];
+			this.upTo = new long[selectors];
+			for (int i = 0; i < steps.length; i++) {
+				this.owners[i] = owners.get(i);
+				for (int k = this.owners[i]; k < selectors; k++) upTo[k] |= 1L << i;
+			}
+			this.starts = starts;
+			this.lasts = lasts;
+			this.mode = mode;
+			this.each = new List[mode == EACH ? selectors : 0];
+			for (int k = 0; k < each.length; k++) each[k] = new ArrayList<>();
+			this.active = steps.length == MAX_STEPS ? -1L : (1L << steps.length) - 1;
+			this.best = selectors;
+		}
+
+		private void select(IHtmlElement context, ElementStack stack) {
+			if ((starts & active) == 0L) return;
+			stack.pushChildren(context, starts & active);
+
+			while (!stack.isEmpty()) {
+				long pending = stack.peekState() & active;
+				IHtmlElement e = stack.pop();
+				if (pending == 0L) continue;
+
+				long next = 0L, matched = 0L;
+				for (int i = 0; i < steps.length; i++) {
+					long bit = 1L << i;
+					if ((pending & bit) == 0) continue;
+					Step step = steps[i];
+					if (step.anyDepth) next |= bit;
+					if (step.matches(e)) {
+						if ((lasts & bit) == 0) next |= bit << 1;
+						else matched |= 1L << owners[i];
+					}
+				}
+
+				if (matched != 0L) found(e, matched);
+				next &= active;
+				if (next != 0L) stack.pushChildren(e, next);
+			}
+		}
+
+		/**
+		 * @param selectors the bits of the selectors that matched the element
+		 */
+		private void found(IHtmlElement e, long selectors) {
+			if (mode == EACH) {
+				for (int k = 0; k < each.length; k++)
+					if ((selectors & (1L << k)) != 0) each[k].add(e);
+				return;
+			}
+
+			if (mode == FIRST) {
+				int selector = Long.numberOfTrailingZeros(selectors);
+				if (selector > best) return;
+				if (selector < best) {
+					best = selector;
+					active = upTo[selector];
+					found.clear();
+					seen.clear();
+				}
+			}
+			if (seen.add(e)) found.add(e);
+		}
+	}
+
+	private static final class Step {
+		private final boolean anyDepth;
+		/**
+		 * null for any tag
+		 */
+		private final String tag;
+		private final String[] names;
+		/**
+		 * a null value means the attribute only has to be present
+		 */
+		private final String[] values;
+
+		private Step(boolean anyDepth, String tag, String[] names, String[] values) {
+			this.anyDepth = anyDepth;
+			this.tag = tag;
+			this.names = names;
+			this.values = values;
+		}
+
+		/**
+		 * @return a list of elements, that contains at least all the elements this step matches
+		 */
+		private List<IHtmlElement> candidates(ElementIndex index) {
+			List<IHtmlElement> best = tag == null ? null : index.withTag(tag);
+
+			for (int i = 0; i < names.length; i++) {
+				List<IHtmlElement> list;
+				String value = values[i] == null ? "" : values[i].trim();
+
+				if (!value.isEmpty() && "id".equalsIgnoreCase(names[i]))
+					list = index.withId(values[i]);
+				else if (!value.isEmpty() && "class".equalsIgnoreCase(names[i]))
+					list = index.withClass(value.split("\\s+")[0]);
+				else
+					list = index.withAttribute(names[i]);
+
+				if (best == null || list.size() < best.size()) best = list;
+			}
+			return best;
+		}
+
+		private boolean matches(IHtmlElement e) {
+			if (tag != null && !tag.equalsIgnoreCase(e.getTagName())) return false;
+			if (names.length == 0) return true;
+
+			IHtmlNode.IHtmlNodeAttributeCollection attributes = e.getAttributes();
+			if (attributes == null) return false;
+
+			for (int i = 0; i < names.length; i++) {
+				if (!attributes.containsKey(names[i])) return false;
+				if (values[i] != null && !values[i].equals(attributes.get(names[i]))) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A single pass over the path. Returns null as soon as something it does not fully understand is encountered.
+	 */
+	private static final class Parser {
+		private final String s;
+		private int pos;
+
+		private Parser(String s) {
+			this.s = s;
+		}
+
+		private Step[] parse() {
+			List<Step> steps = new ArrayList<>();
+			boolean anyDepth = false;
+
+			while (true) {
+				if (s.startsWith(ANY_DEPTH, pos)) {
+					if (anyDepth) return null;
+					anyDepth = true;
+					pos += ANY_DEPTH.length();
+				} else {
+					Step step = step(anyDepth);
+					if (step == null) return null;
+					steps.add(step);
+					anyDepth = false;
+				}
+
+				if (pos == s.length()) break;
+				if (s.charAt(pos++) != '.') return null;
+			}
+
+			if (anyDepth || steps.isEmpty() || steps.size() > MAX_STEPS) return null;
+			return steps.toArray(new Step[0]);
+		}
+
+		private Step step(boolean anyDepth) {
+			int start = pos;
+			while (pos < s.length() && isNameChar(s.charAt(pos))) pos++;
+
+			String tag = s.substring(start, pos);
+			if (tag.isEmpty()) {
+				if (pos < s.length() && s.charAt(pos) == '*') {
+					pos++;
+					tag = ANY_TAG;
+				} else return null;
+			}
+
+			List<String> names = new ArrayList<>();
+			List<String> values = new ArrayList<>();
+			if (pos < s.length() && s.charAt(pos) == '[' && !attributes(names, values)) return null;
+
+			return new Step(anyDepth, ANY_TAG.equals(tag) ? null : tag,
+							names.toArray(new String[0]), values.toArray(new String[0]));
+		}
+
+		private boolean attributes(List<String> names, List<String> values) {
+			pos++; // [
+			while (true) {
+				skipSpaces();
+				int start = pos;
+				while (pos < s.length() && isNameChar(s.charAt(pos))) pos++;
+				if (start == pos) return false;
+				names.add(s.substring(start, pos));
+
+				skipSpaces();
+				if (pos >= s.length() || s.charAt(pos++) != ':') return false;
+				skipSpaces();
+				if (pos >= s.length()) return false;
+
+				if (s.charAt(pos) == '*') {
+					pos++;
+					values.add(null);
+				} else if (s.charAt(pos) == '\'') {
+					int close = s.indexOf('\'', pos + 1);
+					if (close < 0) return false;
+					values.add(s.substring(pos + 1, close));
+					pos = close + 1;
+				} else return false;
+
+				skipSpaces();
+				if (pos >= s.length()) return false;
+				char c = s.charAt(pos++);
+				if (c == ']') return true;
+				if (c != '&') return false;
+			}
+		}
+
+		private void skipSpaces() {
+			while (pos < s.length() && s.charAt(pos) == ' ') pos++;
+		}
+
+		private static boolean isNameChar(char c) {
+			return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+		}
+	}
+}
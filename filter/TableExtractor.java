@@ -0,0 +1,237 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Extracts a table of values, a column per {@link Grouper}, from the rows of a filter. The paths of all the
+ * path based groupers ({@link Grouper#text(String)}, {@link Grouper#attribute(String, String)} etc.) are matched
+ * in a single walk over each row, instead of a walk per grouper, and the values are kept in a column per grouper
+ * instead of a map of pairs:
+ * <pre>
+ * Table specs = new TableExtractor("***.tr", text("***.th"), text("***.td"), attribute("***.a", "href"))
+ *         .extract(document);
+ * for (int row = 0; row &lt; specs.rowCount(); row++)
+ *     offer.add(specs.&lt;String&gt;get(row, 0), specs.&lt;String&gt;get(row, 1));
+ * </pre>
+ * Extractors are immutable and can be kept in constants.
+ *
+ * @author dpozinen
+ * @see Filter#groupBy(Grouper, Grouper)
+ */
+public final class TableExtractor {
+
+	public static final int PARALLEL_THRESHOLD = 64;
+	private static final int MIN_CHUNK = 16;
+
+	/**
+	 * null if the rows are the elements of the extracted filter
+	 */
+	private final String rows;
+	private final Grouper<?>[] columns;
+	/**
+	 * The distinct paths of the columns
+	 */
+	private final String[] paths;
+	/**
+	 * The index in {@link #paths} of the path of each column, -1 if the column has none
+	 */
+	private final int[] pathOf;
+
+	/**
+	 * @param rows the path of the rows in the extracted filter
+	 */
+	public TableExtractor(String rows, Grouper<?>... columns) {
+		this.rows = rows;
+		this.columns = columns.clone();
+		this.pathOf = new int[columns.length];
+
+		List<String> paths = new ArrayList<>();
+		for (int c = 0; c < columns.length; c++) {
+			String path = columns[c].path();
+			if (path != null && !paths.contains(path)) paths.add(path);
+			pathOf[c] = path == null ? -1 : paths.indexOf(path);
+		}
+		this.paths = paths.toArray(new String[0]);
+	}
+
+	/**
+	 * Every element of the extracted filter is a row
+	 */
+	public TableExtractor(Grouper<?>... columns) {
+		this(null, columns);
+	}
+
+	public Table extract(Filter f) {
+		return extractRows(this.rows == null ? f : f.filter(this.rows));
+	}
+
+	private Table extractRows(Filter rows) {
+		int size = rows.size();
+		Object[][] values = new Object[columns.length][size];
+
+		for (int r = 0; r < size; r++)
+			extractRow(rows.get(r), values, r);
+		return new Table(values, size);
+	}
+
+	/**
+	 * Same as {@link #extract(Filter)}, but the rows are split into chunks, that are extracted on the executor.
+	 * Every row is written to its own index, so the table is the same as the one extracted sequentially,
+	 * and so are the maps and lists made from it. Tables of less than {@link #PARALLEL_THRESHOLD} rows are extracted
+	 * on the calling thread.
+	 * <p>
+	 * The rows are read from several threads, and that is not known to be safe: the elements, their texts, attributes
+	 * and children, come from the html parser, which does not promise concurrent reads. Only use this where that
+	 * has been checked for the parser, with groupers that are thread-safe.
+	 *
+	 * @param executor a ForkJoinPool or any other executor. The chunks of a ForkJoinPool are forked and joined, so
+	 *                 this can be called from a task of the same pool. With any other executor the calling thread
+	 *                 waits for all chunks to finish, so it must not be a thread of that executor
+	 * @throws IllegalStateException if the calling thread was interrupted while waiting
+	 */
+	public Table extract(Filter f, ExecutorService executor) {
+		final Filter rows = this.rows == null ? f : f.filter(this.rows);
+		final int size = rows.size();
+		if (size < PARALLEL_THRESHOLD) return extractRows(rows);
+
+		final Object[][] values = new Object[columns.length][size];
+		int chunk = Math.max(MIN_CHUNK, size / (Runtime.getRuntime().availableProcessors() * 4) + 1);
+		if (executor instanceof ForkJoinPool) {
+			Rows task = new Rows(rows, values, chunk, 0, size);
+			if (ForkJoinTask.getPool() == executor) task.invoke();
+			else ((ForkJoinPool) executor).invoke(task);
+			return new Table(values, size);
+		}
+
+		List<Future<?>> futures = new ArrayList<>();
+		for (int start = 0; start < size; start += chunk) {
+			final int from = start, to = Math.min(size, start + chunk);
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int r = from; r < to; r++)
+						extractRow(rows.get(r), values, r);
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures) future.get();
+		} catch (InterruptedException e) {
+			for (Future<?> future : futures) future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while extracting the table", e);
+		} catch (ExecutionException e) {
+			for (Future<?> future : futures) future.cancel(true);
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		return new Table(values, size);
+	}
+
+	/**
+	 * Splits the rows in halves until they fit a chunk, so that a pool joins its own tasks instead of blocking on them
+	 */
+	private final class Rows extends RecursiveAction {
+		private static final long serialVersionUID = -4306178457437283961L;
+
+		private final Filter rows;
+		private final Object[][] values;
+		private final int chunk;
+		private final int start;
+		private final int end;
+
+		private Rows(Filter rows, Object[][] values, int chunk, int start, int end) {
+			this.rows = rows;
+			this.values = values;
+			this.chunk = chunk;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= chunk) {
+				for (int r = start; r < end; r++)
+					extractRow(rows.get(r), values, r);
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new Rows(rows, values, chunk, start, mid), new Rows(rows, values, chunk, mid, end));
+			}
+		}
+	}
+
+	void extractRow(Filter row, Object[][] values, int r) {
+		Filter[] filtered = row.filterEach(paths);
+		for (int c = 0; c < columns.length; c++)
+			values[c][r] = columns[c].extract(row, pathOf[c] < 0 ? null : filtered[pathOf[c]]);
+	}
+
+	/**
+	 * The values extracted by a {@link TableExtractor}, kept by column, in the order of the rows
+	 */
+	public static final class Table {
+		private final Object[][] columns;
+		private final int rowCount;
+
+		Table(Object[][] columns, int rowCount) {
+			this.columns = columns;
+			this.rowCount = rowCount;
+		}
+
+		public int rowCount() {
+			return rowCount;
+		}
+
+		public int columnCount() {
+			return columns.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T> T get(int row, int column) {
+			return (T) columns[column][row];
+		}
+
+		/**
+		 * @return an unmodifiable view of the column, nothing is copied
+		 */
+		@SuppressWarnings("unchecked")
+		public <T> List<T> column(int column) {
+			return Collections.unmodifiableList((List<T>) (List<?>) Arrays.asList(columns[column]));
+		}
+
+		/**
+		 * @return the same map {@link Filter#groupBy(Grouper, Grouper)} returns for the two columns
+		 */
+		public <K, V> Map<K, V> toMap(int keyColumn, int valueColumn) {
+			Map<K, V> map = new HashMap<>();
+			for (int r = 0; r < rowCount; r++)
+				map.put(this.<K>get(r, keyColumn), this.<V>get(r, valueColumn));
+			return map;
+		}
+
+		/**
+		 * @return the same list {@link Filter#pairBy(Grouper, Grouper)} returns for the two columns
+		 */
+		public <K, V> List<Pair<K, V>> toPairs(int keyColumn, int valueColumn) {
+			List<Pair<K, V>> pairs = new ArrayList<>(rowCount);
+			for (int r = 0; r < rowCount; r++)
+				pairs.add(Pair.of(this.<K>get(r, keyColumn), this.<V>get(r, valueColumn)));
+			return pairs;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package blackbee.swarm.parsinghelper.filter;
+
+import blackbee.swarm.core.parsing.html.HtmlPrintFlags;
+import blackbee.swarm.core.parsing.html.IHtmlElement;
+import blackbee.swarm.parsinghelper.BasicParsingHelper;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the text and content of the elements of a document, so that conditions, groupers and repeated calls
+ * on the same element don't rebuild its text from all of its descendants over and over again.
+ * <p>
+ * Elements are kept by identity. The memo is held by the {@link DocumentCache} of the document, so it is
+ * released together with the document.
+ * <p>
+ * The text of an element with children contains the texts of all of its descendants, so memoizing every element
+ * of a deep document would keep many copies of the same text. Deep scans, that read the text of every element once,
+ * only {@link #peekText look} into the memo and don't add to it. The memo keeps at most {@link #MAX_CHARS} chars
+ * (about twice as many bytes), once that is reached it starts over.
+ *
+ * @author dpozinen
+ */
+final class TextMemo {
+
+	static final int MAX_CHARS = 4 * 1024 * 1024;
+
+	private final Map<IHtmlElement, Texts> texts = new IdentityHashMap<>();
+	private int chars;
+
+	/**
+	 * @see IHtmlElement#getAsText(boolean)
+	 */
+	String text(IHtmlElement e, boolean includeChildren) {
+		Texts t = texts(e);
+		String text = includeChildren ? t.withChildren : t.withoutChildren;
+		if (text == null) {
+			text = e.getAsText(includeChildren);
+			if (includeChildren) t.withChildren = text;
+			else t.withoutChildren = text;
+			retained(text);
+		}
+		return text;
+	}
+
+	/**
+	 * Same as {@link #text(IHtmlElement, boolean)}, but the text is not memoized if it is not already
+	 */
+	String peekText(IHtmlElement e, boolean includeChildren) {
+		Texts t = peek(e);
+		String text = t == null ? null : includeChildren ? t.withChildren : t.withoutChildren;
+		return text == null ? e.getAsText(includeChildren) : text;
+	}
+
+	/**
+	 * @see BasicParsingHelper#normalizeText(String)
+	 */
+	String textNormalized(IHtmlElement e, boolean includeChildren) {
+		Texts t = texts(e);
+		String text = includeChildren ? t.normalizedWithChildren : t.normalizedWithoutChildren;
+		if (text == null) {
+			text = BasicParsingHelper.normalizeText(text(e, includeChildren));
+			if (includeChildren) t.normalizedWithChildren = text;
+			else t.normalizedWithoutChildren = text;
+			retained(text);
+		}
+		return text;
+	}
+
+	/**
+	 * @return the content of the element, as used for scripts
+	 */
+	String content(IHtmlElement e) {
+		Texts t = texts(e);
+		String content = t.content;
+		if (content == null) {
+			t.content = content = e.getContent(HtmlPrintFlags.Default);
+			retained(content);
+		}
+		return content;
+	}
+
+	/**
+	 * Same as {@link #content(IHtmlElement)}, but the content is not memoized if it is not already
+	 */
+	String peekContent(IHtmlElement e) {
+		Texts t = peek(e);
+		String content = t == null ? null : t.content;
+		return content == null ? e.getContent(HtmlPrintFlags.Default) : content;
+	}
+
+	/**
+	 * Only the lookup is synchronized, the text itself is built outside of the lock.
+	 * Two threads may build the same text at the same time, but they will both get an equal string.
+	 */
+	private synchronized Texts texts(IHtmlElement e) {
+		Texts t = texts.get(e);
+		if (t == null) texts.put(e, t = new Texts());
+		return t;
+	}
+
+	private synchronized Texts peek(IHtmlElement e) {
+		return texts.get(e);
+	}
+
+	/**
+	 * Starts over once the memo holds more than {@link #MAX_CHARS} chars. Texts that are being built at the moment
+	 * are stored in entries that are no longer in the memo, which is harmless.
+	 */
+	private synchronized void retained(String text) {
+		if (text == null) return;
+		chars += text.length();
+		if (chars > MAX_CHARS) {
+			texts.clear();
+			chars = 0;
+		}
+	}
+
+	private static final class Texts {
+		private volatile String withChildren;
+		private volatile String withoutChildren;
+		private volatile String normalizedWithChildren;
+		private volatile String normalizedWithoutChildren;
+		private volatile String content;
+	}
+}